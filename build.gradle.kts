@@ -41,15 +41,91 @@ dependencies {
     implementation("io.github.spair", "imgui-java-$imguiNatives", imguiVersion)
 }
 
+sourceSets {
+    create("benchmark") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+    }
+}
+
 tasks {
     compileJava {
         options.encoding = "UTF-8"
         options.release.set(21)
     }
 
+    named<JavaCompile>("compileBenchmarkJava") {
+        options.encoding = "UTF-8"
+        options.release.set(21)
+    }
+
     named<ShadowJar>("shadowJar") {
         minimize()
     }
+
+    register<JavaExec>("benchmarkSaveCodecs") {
+        group = "verification"
+        description = "Reports encode/decode throughput and ratio of every save codec on a generated world."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.SaveCodecBenchmark")
+        args = listOf(project.findProperty("worldSize")?.toString() ?: "256", project.findProperty("worldDepth")?.toString() ?: "64", "5")
+    }
+
+    register<JavaExec>("benchmarkHeightmap") {
+        group = "verification"
+        description = "Compares the scalar, section scan and parallel heightmap builds across world sizes."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.HeightmapBenchmark")
+        args = listOf(project.findProperty("worldDepth")?.toString() ?: "64", "5", project.findProperty("worldSizes")?.toString() ?: "128,256,512")
+        project.findProperty("cpuCount")?.let { jvmArgs("-XX:ActiveProcessorCount=$it") }
+    }
+
+    register<JavaExec>("benchmarkLighting") {
+        group = "verification"
+        description = "Times the initial skylight pass and incremental relights, then checks them against a full relight."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.LightBenchmark")
+        args = listOf(project.findProperty("worldSize")?.toString() ?: "256", project.findProperty("worldDepth")?.toString() ?: "64", project.findProperty("edits")?.toString() ?: "2000")
+    }
+
+    register<JavaExec>("stressSectionSnapshots") {
+        group = "verification"
+        description = "Checks section and region snapshots for torn reads while the world is being written."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.SectionSnapshotStress")
+        args = listOf(project.findProperty("seconds")?.toString() ?: "10")
+    }
+
+    register<JavaExec>("stressBlockChangeRing") {
+        group = "verification"
+        description = "Publishes block changes while slow and fast consumers check for torn records and unaccounted overflow."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.BlockChangeRingStress")
+        args = listOf(project.findProperty("seconds")?.toString() ?: "10")
+    }
+
+    register<JavaExec>("checkScheduledTicks") {
+        group = "verification"
+        description = "Checks that a scheduled lava flow fires on its exact tick, before and after a save and reload."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.ScheduledTickCheck")
+    }
+
+    register<JavaExec>("benchmarkStorage") {
+        group = "verification"
+        description = "Compares scan, random read and random write throughput of heap, off-heap and section block storage."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.WorldStorageBenchmark")
+        args = listOf(project.findProperty("worldSize")?.toString() ?: "256", project.findProperty("worldDepth")?.toString() ?: "64", "5")
+    }
+
+    register<JavaExec>("benchmarkSaveScaling") {
+        group = "verification"
+        description = "Measures chunk encode and decode throughput of a save against worker thread count."
+        classpath = sourceSets["benchmark"].runtimeClasspath
+        mainClass.set("me.kalmemarq.world.SaveScalingBenchmark")
+        args = listOf(project.findProperty("worldSize")?.toString() ?: "512", project.findProperty("worldDepth")?.toString() ?: "64", "5", project.findProperty("threadCounts")?.toString() ?: "1,2,4,8,16")
+    }
 }
 
 fun getNativesImGui(): String {
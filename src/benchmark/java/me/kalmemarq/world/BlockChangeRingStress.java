@@ -0,0 +1,109 @@
+package me.kalmemarq.world;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BlockChangeRingStress {
+    private static final Logger LOGGER = LogManager.getLogger("BlockChangeRingStress");
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int consumerCount = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 10;
+
+        BlockChangeRing ring = new BlockChangeRing(capacity);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong failures = new AtomicLong();
+        List<Thread> consumers = new ArrayList<>();
+        long[] received = new long[consumerCount];
+        long[] dropped = new long[consumerCount];
+        for (int i = 0; i < consumerCount; ++i) {
+            int id = i;
+            BlockChangeRing.Consumer consumer = ring.subscribe(1 + i * 61 % 256);
+            Thread thread = new Thread(() -> {
+                long[] last = {consumer.getPosition() - 1};
+                BlockChangeRing.Handler handler = (x, y, z, oldId, newId, tick) -> {
+                    String error = check(x, y, z, oldId, newId, tick, last[0]);
+                    if (error != null && failures.getAndIncrement() < 10) {
+                        LOGGER.error("Consumer {}: {}", id, error);
+                    }
+                    last[0] = tick;
+                };
+                while (running.get() || consumer.getLag() > 0) {
+                    received[id] += consumer.poll(handler);
+                    if (id % 2 == 1 && ThreadLocalRandom.current().nextInt(64) == 0) {
+                        try {
+                            Thread.sleep(0, ThreadLocalRandom.current().nextInt(100_000));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                dropped[id] = consumer.getDropped();
+                if (received[id] + dropped[id] != ring.getCursor()) {
+                    failures.incrementAndGet();
+                    LOGGER.error("Consumer {} accounted for {} of {} records", id, received[id] + dropped[id], ring.getCursor());
+                }
+                consumer.close();
+            }, "Ring Consumer " + i);
+            thread.start();
+            consumers.add(thread);
+        }
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long published = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 4096; ++i, ++published) {
+                ring.publish(x(published), y(published), z(published), oldId(published), newId(published), published);
+            }
+        }
+
+        running.set(false);
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+
+        long totalDropped = 0;
+        for (long count : dropped) {
+            totalDropped += count;
+        }
+        LOGGER.info("{} records published to {} consumers, {} dropped on overflow, {} torn or lost records", published, consumerCount, totalDropped, failures.get());
+        if (failures.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String check(int x, int y, int z, int oldId, int newId, long tick, long last) {
+        if (tick <= last) return "tick " + tick + " delivered after " + last;
+        if (x != x(tick) || y != y(tick) || z != z(tick) || oldId != oldId(tick) || newId != newId(tick)) {
+            return "record " + tick + " is torn: " + x + ", " + y + ", " + z + " " + oldId + " -> " + newId;
+        }
+        return null;
+    }
+
+    private static int x(long sequence) {
+        return (int) (sequence * 31 & (WriteAheadLog.MAX_HORIZONTAL - 1));
+    }
+
+    private static int y(long sequence) {
+        return (int) (sequence >>> 3 & (WriteAheadLog.MAX_VERTICAL - 1));
+    }
+
+    private static int z(long sequence) {
+        return (int) (sequence >>> 11 & (WriteAheadLog.MAX_HORIZONTAL - 1));
+    }
+
+    private static int oldId(long sequence) {
+        return (int) (sequence & 0xFF);
+    }
+
+    private static int newId(long sequence) {
+        return (int) (sequence * 7 >>> 2 & 0xFF);
+    }
+}
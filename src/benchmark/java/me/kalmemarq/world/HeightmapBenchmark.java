@@ -0,0 +1,96 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HeightmapBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger("HeightmapBenchmark");
+
+    public static void main(String[] args) throws IOException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int[] sizes = args.length > 2 ? parseSizes(args[2]) : new int[]{128, 256, 512};
+
+        Blocks.initialize();
+        LOGGER.info("Benchmarking heightmap builds with {} available processors, {} rounds", Runtime.getRuntime().availableProcessors(), rounds);
+        LOGGER.info(String.format("%-14s %12s %12s %12s %10s", "world", "scalar ms", "scan ms", "parallel ms", "speedup"));
+        for (int size : sizes) {
+            benchmark(size, depth, rounds);
+        }
+    }
+
+    private static void benchmark(int size, int depth, int rounds) throws IOException {
+        Path directory = Files.createTempDirectory("heightmap-benchmark");
+        World world = new World(size, size, depth, directory.resolve("level.dat"));
+        world.calculateHeightMap();
+
+        short[] expected = new short[size * size];
+        long scalarNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < rounds + 1; ++round) {
+            long start = System.nanoTime();
+            for (int x = 0; x < size; ++x) {
+                for (int z = 0; z < size; ++z) {
+                    int y = depth - 1;
+                    while (y >= 0 && world.getBlockId(x, y, z) == 0) {
+                        --y;
+                    }
+                    expected[z * size + x] = (short) y;
+                }
+            }
+            long scalarEnd = System.nanoTime();
+            for (int z = 0; z < size; z += World.CHUNK_SIZE) {
+                for (int x = 0; x < size; x += World.CHUNK_SIZE) {
+                    world.calculateHeightMap(x, z, x + World.CHUNK_SIZE, z + World.CHUNK_SIZE);
+                }
+            }
+            long scanEnd = System.nanoTime();
+            verify(world, expected, size, "scan");
+            world.calculateHeightMap();
+            long parallelEnd = System.nanoTime();
+            verify(world, expected, size, "parallel");
+
+            if (round > 0) {
+                scalarNanos = Math.min(scalarNanos, scalarEnd - start);
+                scanNanos = Math.min(scanNanos, scanEnd - scalarEnd);
+                parallelNanos = Math.min(parallelNanos, parallelEnd - scanEnd);
+            }
+        }
+
+        LOGGER.info(String.format("%-14s %12.2f %12.2f %12.2f %9.1fx", size + "x" + size + "x" + depth, scalarNanos / 1_000_000.0, scanNanos / 1_000_000.0, parallelNanos / 1_000_000.0, (double) scalarNanos / parallelNanos));
+
+        world.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void verify(World world, short[] expected, int size, String name) {
+        for (int z = 0; z < size; ++z) {
+            for (int x = 0; x < size; ++x) {
+                if (world.getHeight(x, z) != expected[z * size + x]) {
+                    throw new IllegalStateException(name + " heightmap disagrees with the scalar scan at " + x + ", " + z);
+                }
+            }
+        }
+    }
+
+    private static int[] parseSizes(String sizes) {
+        String[] parts = sizes.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,117 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class LightBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger("LightBenchmark");
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int edits = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        Blocks.initialize();
+        Path directory = Files.createTempDirectory("light-benchmark");
+        World world = new World(size, size, depth, directory.resolve("level.dat"));
+
+        long start = System.nanoTime();
+        for (int z = 0; z < size; z += World.CHUNK_SIZE) {
+            for (int x = 0; x < size; x += World.CHUNK_SIZE) {
+                world.getSkyLight(x, 0, z);
+            }
+        }
+        LOGGER.info("Lit a {}x{}x{} world in {} ms", size, size, depth, String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+
+        Random random = new Random(0L);
+        LightEngine engine = world.getLightEngine();
+        long placeNanos = 0;
+        long removeNanos = 0;
+        long placeVoxels = 0;
+        long removeVoxels = 0;
+        for (int i = 0; i < edits; ++i) {
+            int x = random.nextInt(size);
+            int z = random.nextInt(size);
+            int y = Math.min(world.getHeight(x, z) + 2 + random.nextInt(4), depth - 1);
+            int previous = world.getBlockId(x, y, z);
+
+            long relit = engine.getRelitVoxels();
+            long editStart = System.nanoTime();
+            world.setBlockId(x, y, z, Blocks.STONE.numericId);
+            long placed = System.nanoTime();
+            placeVoxels += engine.getRelitVoxels() - relit;
+            relit = engine.getRelitVoxels();
+            world.setBlockId(x, y, z, previous);
+            removeNanos += System.nanoTime() - placed;
+            removeVoxels += engine.getRelitVoxels() - relit;
+            placeNanos += placed - editStart;
+
+            if (random.nextInt(4) == 0) {
+                world.setBlockId(x, y, z, Blocks.PLANKS.numericId);
+            }
+            world.flushChanges();
+        }
+        LOGGER.info("Placing a block took {} us and relit {} voxels on average", String.format("%.2f", placeNanos / 1000.0 / edits), placeVoxels / edits);
+        LOGGER.info("Removing a block took {} us and relit {} voxels on average", String.format("%.2f", removeNanos / 1000.0 / edits), removeVoxels / edits);
+
+        int lights = Math.max(edits / 10, 1);
+        long lightNanos = 0;
+        long lightTicks = 0;
+        long lightVoxels = 0;
+        for (int i = 0; i < lights; ++i) {
+            int x = random.nextInt(size);
+            int z = random.nextInt(size);
+            int y = Math.min(world.getHeight(x, z) + 1 + random.nextInt(3), depth - 1);
+            int previous = world.getBlockId(x, y, z);
+
+            long relit = engine.getRelitVoxels();
+            long lightStart = System.nanoTime();
+            world.setBlockId(x, y, z, Blocks.LAVA.numericId);
+            lightTicks += drainBlockLight(engine);
+            if (random.nextInt(3) > 0) {
+                world.setBlockId(x, y, z, previous);
+                lightTicks += drainBlockLight(engine);
+            }
+            lightNanos += System.nanoTime() - lightStart;
+            lightVoxels += engine.getRelitVoxels() - relit;
+            world.flushChanges();
+        }
+        LOGGER.info("Placing and breaking a light took {} us over {} ticks and relit {} voxels on average", String.format("%.2f", lightNanos / 1000.0 / lights), String.format("%.2f", (double) lightTicks / lights), lightVoxels / lights);
+
+        LightEngine reference = new LightEngine(world, null);
+        for (int y = 0; y < depth; ++y) {
+            for (int z = 0; z < size; ++z) {
+                for (int x = 0; x < size; ++x) {
+                    if (reference.getSkyLight(x, y, z) != world.getSkyLight(x, y, z) || reference.getBlockLight(x, y, z) != world.getBlockLight(x, y, z)) {
+                        throw new IllegalStateException("Incremental light disagrees with a full relight at " + x + ", " + y + ", " + z);
+                    }
+                }
+            }
+        }
+        LOGGER.info("Incremental light matches a full relight after {} edits", edits);
+
+        world.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static int drainBlockLight(LightEngine engine) {
+        int ticks = 0;
+        while (engine.hasPendingBlockLight()) {
+            engine.tick();
+            ++ticks;
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,131 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SaveCodecBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger("SaveCodecBenchmark");
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Blocks.initialize();
+        List<ChunkSection> sections = generateSections(size, depth, args.length > 3 ? Long.parseLong(args[3]) : 0L);
+        long totalBytes = (long) sections.size() * ChunkSection.VOLUME;
+        LOGGER.info("Benchmarking {} chunks ({} KB of block ids) of a {}x{}x{} world, {} rounds", sections.size(), totalBytes / 1024, size, size, depth, rounds);
+        LOGGER.info("Throughput includes section (de)serialization and is measured against one byte per block, ratio is one byte per block over encoded size");
+        LOGGER.info(String.format("%-12s %-8s %12s %12s %8s", "codec", "layout", "encode MB/s", "decode MB/s", "ratio"));
+
+        for (SaveCodec codec : SaveCodec.values()) {
+            for (Layout layout : Layout.values()) {
+                benchmark(codec, layout, sections, totalBytes, rounds);
+            }
+        }
+    }
+
+    private static void benchmark(SaveCodec codec, Layout layout, List<ChunkSection> sections, long totalBytes, int rounds) throws IOException {
+        byte[][] encoded = new byte[sections.size()][];
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        long encodedBytes = 0;
+
+        for (int round = 0; round < rounds + 1; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < encoded.length; ++i) {
+                encoded[i] = codec.encode(layout.write(sections.get(i)));
+            }
+            long encodeEnd = System.nanoTime();
+            for (int i = 0; i < encoded.length; ++i) {
+                ChunkSection section = layout.read(codec.decode(encoded[i]));
+                if (round == 0 && !equals(section, sections.get(i))) {
+                    throw new IllegalStateException(codec.name() + " " + layout.name + " failed to round-trip chunk " + i);
+                }
+            }
+            long decodeEnd = System.nanoTime();
+
+            if (round > 0) {
+                encodeNanos = Math.min(encodeNanos, encodeEnd - start);
+                decodeNanos = Math.min(decodeNanos, decodeEnd - encodeEnd);
+            }
+        }
+
+        for (byte[] data : encoded) {
+            encodedBytes += data.length;
+        }
+
+        LOGGER.info(String.format("%-12s %-8s %12.1f %12.1f %8.2f", codec.name(), layout.name, megabytesPerSecond(totalBytes, encodeNanos), megabytesPerSecond(totalBytes, decodeNanos), (double) totalBytes / encodedBytes));
+    }
+
+    private static boolean equals(ChunkSection a, ChunkSection b) {
+        for (int i = 0; i < ChunkSection.VOLUME; ++i) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+
+    private static List<ChunkSection> generateSections(int size, int depth, long seed) {
+        WorldGenerator generator = new WorldGenerator(seed, size, size, depth);
+        List<ChunkSection> sections = new ArrayList<>();
+
+        for (int chunkY = 0; chunkY < (depth + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkY) {
+            for (int chunkZ = 0; chunkZ < (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkZ) {
+                for (int chunkX = 0; chunkX < (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkX) {
+                    sections.add(generator.generateSection(chunkX, chunkY, chunkZ));
+                }
+            }
+        }
+        return sections;
+    }
+
+    private enum Layout {
+        BYTES("bytes"),
+        PACKED("packed");
+
+        private final String name;
+
+        Layout(String name) {
+            this.name = name;
+        }
+
+        private byte[] write(ChunkSection section) throws IOException {
+            if (this == BYTES) {
+                byte[] blocks = new byte[ChunkSection.VOLUME];
+                for (int i = 0; i < blocks.length; ++i) {
+                    blocks[i] = (byte) section.get(i);
+                }
+                return blocks;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            section.write(new DataOutputStream(output));
+            return output.toByteArray();
+        }
+
+        private ChunkSection read(byte[] data) throws IOException {
+            if (this == BYTES) {
+                ChunkSection section = new ChunkSection();
+                for (int i = 0; i < data.length; ++i) {
+                    section.set(i, data[i] & 0xFF);
+                }
+                section.trim();
+                return section;
+            }
+            return ChunkSection.read(new DataInputStream(new ByteArrayInputStream(data)));
+        }
+    }
+}
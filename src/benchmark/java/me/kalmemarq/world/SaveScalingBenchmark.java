@@ -0,0 +1,129 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SaveScalingBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger("SaveScalingBenchmark");
+    private static final int SAVE_BATCH = 256;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int[] threadCounts = Arrays.stream((args.length > 3 ? args[3] : "1,2,4,8,16").split(",")).mapToInt(Integer::parseInt).toArray();
+
+        Blocks.initialize();
+        WorldGenerator generator = new WorldGenerator(0L, size, size, depth);
+        List<ChunkSection> sections = new ArrayList<>();
+        for (int chunkY = 0; chunkY < (depth + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkY) {
+            for (int chunkZ = 0; chunkZ < (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkZ) {
+                for (int chunkX = 0; chunkX < (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE; ++chunkX) {
+                    sections.add(generator.generateSection(chunkX, chunkY, chunkZ));
+                }
+            }
+        }
+
+        long totalBytes = (long) sections.size() * ChunkSection.VOLUME;
+        LOGGER.info("Benchmarking {} chunks ({} KB of block ids) of a {}x{}x{} world on {} available processors, {} rounds", sections.size(), totalBytes / 1024, size, size, depth, Runtime.getRuntime().availableProcessors(), rounds);
+        LOGGER.info("Chunks are serialized and encoded in batches of {} like a save, throughput is measured against one byte per block", SAVE_BATCH);
+        LOGGER.info(String.format("%-12s %8s %12s %8s %12s %8s", "codec", "threads", "encode MB/s", "speedup", "decode MB/s", "speedup"));
+
+        for (SaveCodec codec : new SaveCodec[]{SaveCodec.LZ, SaveCodec.DEFLATE_FAST, SaveCodec.DEFLATE}) {
+            double baseEncode = 0.0;
+            double baseDecode = 0.0;
+            for (int threads : threadCounts) {
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    double[] throughput = benchmark(codec, executor, sections, totalBytes, rounds);
+                    if (baseEncode == 0.0) {
+                        baseEncode = throughput[0];
+                        baseDecode = throughput[1];
+                    }
+                    LOGGER.info(String.format("%-12s %8d %12.1f %8.2f %12.1f %8.2f", codec.name(), threads, throughput[0], throughput[0] / baseEncode, throughput[1], throughput[1] / baseDecode));
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }
+    }
+
+    private static double[] benchmark(SaveCodec codec, ExecutorService executor, List<ChunkSection> sections, long totalBytes, int rounds) {
+        byte[][] encoded = new byte[sections.size()][];
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < rounds + 1; ++round) {
+            long start = System.nanoTime();
+            for (int batch = 0; batch < encoded.length; batch += SAVE_BATCH) {
+                List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+                for (int i = batch; i < Math.min(batch + SAVE_BATCH, encoded.length); ++i) {
+                    ChunkSection section = sections.get(i);
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            ByteArrayOutputStream output = new ByteArrayOutputStream();
+                            section.write(new DataOutputStream(output));
+                            return codec.encode(output.toByteArray());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor));
+                }
+                for (int i = 0; i < futures.size(); ++i) {
+                    encoded[batch + i] = futures.get(i).join();
+                }
+            }
+            long encodeEnd = System.nanoTime();
+
+            List<CompletableFuture<ChunkSection>> decoded = new ArrayList<>(encoded.length);
+            for (byte[] data : encoded) {
+                decoded.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ChunkSection.read(new DataInputStream(new ByteArrayInputStream(codec.decode(data))));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            for (int i = 0; i < decoded.size(); ++i) {
+                ChunkSection section = decoded.get(i).join();
+                if (round == 0 && !equals(section, sections.get(i))) {
+                    throw new IllegalStateException(codec.name() + " failed to round-trip chunk " + i);
+                }
+            }
+            long decodeEnd = System.nanoTime();
+
+            if (round > 0) {
+                encodeNanos = Math.min(encodeNanos, encodeEnd - start);
+                decodeNanos = Math.min(decodeNanos, decodeEnd - encodeEnd);
+            }
+        }
+
+        return new double[]{megabytesPerSecond(totalBytes, encodeNanos), megabytesPerSecond(totalBytes, decodeNanos)};
+    }
+
+    private static boolean equals(ChunkSection a, ChunkSection b) {
+        for (int i = 0; i < ChunkSection.VOLUME; ++i) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+}
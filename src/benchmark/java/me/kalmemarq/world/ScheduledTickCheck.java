@@ -0,0 +1,71 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import me.kalmemarq.block.LavaBlock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ScheduledTickCheck {
+    private static final Logger LOGGER = LogManager.getLogger("ScheduledTickCheck");
+    private static final int SIZE = 64;
+    private static final int TICKS_BEFORE_SAVE = 10;
+
+    public static void main(String[] args) throws IOException {
+        Blocks.initialize();
+        Path path = Files.createTempDirectory("scheduled-tick-check").resolve("level.dat");
+        int failures = 0;
+
+        World world = new World(SIZE, SIZE, SIZE, path);
+        world.fillBox(0, 0, 0, SIZE, SIZE, SIZE, Blocks.STONE.numericId);
+        placeLava(world, 10);
+        failures += expectFlow(world, 10, LavaBlock.FLOW_DELAY);
+
+        placeLava(world, 20);
+        tick(world, TICKS_BEFORE_SAVE);
+        world.save();
+        world.close();
+
+        world = new World(SIZE, SIZE, SIZE, path);
+        if (!world.isTickScheduled(20, 10, 10)) {
+            LOGGER.error("Scheduled tick at 20 10 10 was not restored");
+            ++failures;
+        }
+        failures += expectFlow(world, 20, LavaBlock.FLOW_DELAY - TICKS_BEFORE_SAVE);
+        world.close();
+
+        LOGGER.info("Scheduled tick check finished with {} failures", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void placeLava(World world, int x) {
+        world.setBlockId(x + 1, 10, 10, Blocks.AIR.numericId);
+        world.setBlockId(x, 10, 10, Blocks.LAVA.numericId);
+    }
+
+    private static int expectFlow(World world, int x, int delay) {
+        tick(world, delay - 1);
+        if (world.getBlockId(x + 1, 10, 10) != Blocks.AIR.numericId) {
+            LOGGER.error("Lava at {} 10 10 flowed before tick {}", x, delay);
+            return 1;
+        }
+        tick(world, 1);
+        if (world.getBlockId(x + 1, 10, 10) != Blocks.LAVA.numericId) {
+            LOGGER.error("Lava at {} 10 10 did not flow on tick {}", x, delay);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void tick(World world, int ticks) {
+        for (int i = 0; i < ticks; ++i) {
+            world.tick();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SectionSnapshotStress {
+    private static final Logger LOGGER = LogManager.getLogger("SectionSnapshotStress");
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int[] SWEEP_IDS = {1, 3, 4, 5};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int readerCount = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+
+        Blocks.initialize();
+        Path directory = Files.createTempDirectory("snapshot-stress");
+        World world = new World(SIZE * 2, SIZE * 2, SIZE * 2, directory.resolve("level.dat"));
+        world.fillBox(0, 0, 0, SIZE * 2, SIZE, SIZE, 0);
+        sweep(world, 1);
+        world.fillBox(0, SIZE, 0, SIZE, SIZE * 2, SIZE, 1);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong snapshots = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < readerCount; ++i) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    String error = check(world);
+                    if (error != null && failures.getAndIncrement() < 10) {
+                        LOGGER.error("Torn read: {}", error);
+                    }
+                    snapshots.incrementAndGet();
+                }
+            }, "Snapshot Reader " + i);
+            reader.start();
+            readers.add(reader);
+        }
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        int sweeps = 0;
+        long unloads = 0;
+        long compressions = 0;
+        CompletableFuture<Boolean> save = CompletableFuture.completedFuture(true);
+        while (System.nanoTime() < end) {
+            int id = SWEEP_IDS[sweeps % SWEEP_IDS.length];
+            sweep(world, id);
+            if (world.unloadChunk(1, 0, 0)) {
+                ++unloads;
+            }
+            world.fillBox(0, SIZE, 0, SIZE, SIZE * 2, SIZE, id);
+            world.flushChanges();
+            save.join();
+            world.setSaveCodec(sweeps / 4 % 2 == 0 ? SaveCodec.DEFAULT : SaveCodec.LZ);
+            save = world.saveAsync();
+            save.join();
+            if (world.compressChunk(0, 0, 0)) {
+                ++compressions;
+            }
+            if (world.unloadChunk(0, 1, 0)) {
+                ++unloads;
+            }
+            save = world.saveAsync();
+            ++sweeps;
+        }
+
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        save.join();
+        world.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+
+        LOGGER.info("{} writer sweeps with {} unloads and {} cold compressions, {} snapshots checked by {} readers, {} torn reads", sweeps, unloads, compressions, snapshots.get(), readerCount, failures.get());
+        if (failures.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void sweep(World world, int id) {
+        for (int chunkX = 0; chunkX < 2; ++chunkX) {
+            for (int y = 0; y < SIZE; ++y) {
+                for (int z = 0; z < SIZE; ++z) {
+                    for (int x = (y + z) & 1; x < SIZE; x += 2) {
+                        world.setBlockId(chunkX * SIZE + x, y, z, id);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String check(World world) {
+        BlockRegion region = world.snapshotRegion(0, 0, 0, SIZE * 2, SIZE, SIZE);
+        int transitions = 0;
+        int previous = region.get(0, 0, 0);
+        for (int chunkX = 0; chunkX < 2; ++chunkX) {
+            for (int y = 0; y < SIZE; ++y) {
+                for (int z = 0; z < SIZE; ++z) {
+                    for (int x = 0; x < SIZE; ++x) {
+                        int id = region.get(chunkX * SIZE + x, y, z);
+                        if (((x + y + z) & 1) != 0) {
+                            if (id != 0) return "block outside the sweep pattern at " + (chunkX * SIZE + x) + ", " + y + ", " + z + " is " + id;
+                            continue;
+                        }
+                        if (id != previous) {
+                            ++transitions;
+                            previous = id;
+                        }
+                    }
+                }
+            }
+        }
+        if (transitions > 1) return "region has " + transitions + " transitions in write order";
+
+        ChunkSection section = world.snapshotSection(0, 0, 0);
+        int[] histogram = new int[Blocks.blocks.length];
+        section.addBlockCounts(histogram);
+        for (int i = 0; i < ChunkSection.VOLUME; ++i) {
+            --histogram[section.get(i)];
+        }
+        for (int id = 0; id < histogram.length; ++id) {
+            if (histogram[id] != 0) return "section counts disagree with its blocks for id " + id;
+        }
+
+        ChunkSection filled = world.snapshotSection(0, 1, 0);
+        int id = filled.get(0);
+        if (filled.getBlockCount(id) != ChunkSection.VOLUME) return "filled section is not uniform";
+        return null;
+    }
+}
@@ -0,0 +1,160 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class WorldStorageBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger("WorldStorageBenchmark");
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int reads = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 22;
+        int writes = reads >> 4;
+
+        Blocks.initialize();
+        Path directory = Files.createTempDirectory("storage-benchmark");
+        World world = new World(size, size, depth, directory.resolve("level.dat"));
+        long volume = world.getVolume();
+        if (volume > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("A " + size + "x" + size + "x" + depth + " world does not fit in a heap array");
+        }
+
+        byte[] heap = new byte[(int) volume];
+        long address = MemoryUtil.nmemAllocChecked(volume);
+        try {
+            for (int y = 0; y < depth; ++y) {
+                for (int z = 0; z < size; ++z) {
+                    for (int x = 0; x < size; ++x) {
+                        int index = (y * size + z) * size + x;
+                        heap[index] = (byte) world.getBlockId(x, y, z);
+                        MemoryUtil.memPutByte(address + index, heap[index]);
+                    }
+                }
+            }
+
+            Random random = new Random(1);
+            int[] positions = new int[reads * 3];
+            for (int i = 0; i < reads; ++i) {
+                positions[i * 3] = random.nextInt(size);
+                positions[i * 3 + 1] = random.nextInt(depth);
+                positions[i * 3 + 2] = random.nextInt(size);
+            }
+
+            LOGGER.info("Benchmarking block storage on a {}x{}x{} world, {} random reads and {} random writes, {} rounds", size, size, depth, reads, writes, rounds);
+            LOGGER.info(String.format("%-10s %16s %16s %16s", "storage", "scan Mblocks/s", "read Mops/s", "write Mops/s"));
+            for (Storage storage : new Storage[]{new HeapStorage(heap, size), new OffHeapStorage(address, size), new WorldStorage(world)}) {
+                benchmark(storage, size, depth, positions, reads, writes, rounds);
+            }
+        } finally {
+            MemoryUtil.nmemFree(address);
+            world.close();
+        }
+    }
+
+    private static void benchmark(Storage storage, int size, int depth, int[] positions, int reads, int writes, int rounds) {
+        long scanNanos = Long.MAX_VALUE;
+        long readNanos = Long.MAX_VALUE;
+        long writeNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < rounds + 1; ++round) {
+            long start = System.nanoTime();
+            for (int y = 0; y < depth; ++y) {
+                for (int z = 0; z < size; ++z) {
+                    for (int x = 0; x < size; ++x) {
+                        checksum += storage.get(x, y, z);
+                    }
+                }
+            }
+            long scanEnd = System.nanoTime();
+            for (int i = 0; i < reads; ++i) {
+                checksum += storage.get(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            }
+            long readEnd = System.nanoTime();
+            for (int i = 0; i < writes; ++i) {
+                storage.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], 1 + (i + round) % 5);
+            }
+            long writeEnd = System.nanoTime();
+
+            if (round > 0) {
+                scanNanos = Math.min(scanNanos, scanEnd - start);
+                readNanos = Math.min(readNanos, readEnd - scanEnd);
+                writeNanos = Math.min(writeNanos, writeEnd - readEnd);
+            }
+        }
+
+        long volume = (long) size * size * depth;
+        LOGGER.info(String.format("%-10s %16.1f %16.1f %16.1f", storage.name(), volume * 1000.0 / scanNanos, reads * 1000.0 / readNanos, writes * 1000.0 / writeNanos));
+        if (checksum == 42) {
+            LOGGER.info("Unlikely checksum {}", checksum);
+        }
+    }
+
+    private interface Storage {
+        String name();
+
+        int get(int x, int y, int z);
+
+        void set(int x, int y, int z, int id);
+    }
+
+    private record HeapStorage(byte[] blocks, int size) implements Storage {
+        @Override
+        public String name() {
+            return "heap";
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            return this.blocks[(y * this.size + z) * this.size + x] & 0xFF;
+        }
+
+        @Override
+        public void set(int x, int y, int z, int id) {
+            this.blocks[(y * this.size + z) * this.size + x] = (byte) id;
+        }
+    }
+
+    private record OffHeapStorage(long address, int size) implements Storage {
+        @Override
+        public String name() {
+            return "off-heap";
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            return MemoryUtil.memGetByte(this.address + ((long) y * this.size + z) * this.size + x) & 0xFF;
+        }
+
+        @Override
+        public void set(int x, int y, int z, int id) {
+            MemoryUtil.memPutByte(this.address + ((long) y * this.size + z) * this.size + x, (byte) id);
+        }
+    }
+
+    private record WorldStorage(World world) implements Storage {
+        @Override
+        public String name() {
+            return "sections";
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            return this.world.getBlockId(x, y, z);
+        }
+
+        @Override
+        public void set(int x, int y, int z, int id) {
+            this.world.setBlockId(x, y, z, id);
+        }
+    }
+}
@@ -20,6 +20,9 @@ import me.kalmemarq.util.Direction;
 import me.kalmemarq.util.IOUtils;
 import me.kalmemarq.util.Keybinding;
 import me.kalmemarq.util.TimeUtils;
+import me.kalmemarq.world.CompressedSectionCache;
+import me.kalmemarq.world.EditHistory;
+import me.kalmemarq.world.SnapshotStore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joml.Matrix4f;
@@ -46,6 +49,7 @@ public class Game implements Runnable, Window.EventHandler {
     private static final Logger LOGGER = LogManager.getLogger("Main");
     private static final String VERSION = "c0.0.9a";
     private static final float MOUSE_SENSITIVITY = 0.08f;
+    private static final long EDIT_HISTORY_MEMORY_LIMIT = 16L << 20;
     private static final DateTimeFormatter SCREENSHOT_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS");
 
     private static int entityRenderCount;
@@ -64,6 +68,8 @@ public class Game implements Runnable, Window.EventHandler {
     private final Matrix4f modelView = new Matrix4f();
     private World world;
     private WorldRenderer worldRenderer;
+    private final SnapshotStore snapshotStore = new SnapshotStore(Path.of("snapshots"));
+    private final EditHistory editHistory = new EditHistory(EDIT_HISTORY_MEMORY_LIMIT);
     private final Frustum frustum = new Frustum();
     private PlayerEntity player;
     private BlockHitResult blockHitResult;
@@ -97,6 +103,7 @@ public class Game implements Runnable, Window.EventHandler {
 
     @Override
     public void run() {
+        long startTime = TimeUtils.millisTime();
         this.window = new Window(640, 480, VERSION);
         this.window.setIcon();
         this.window.addEventHandler(this);
@@ -129,6 +136,7 @@ public class Game implements Runnable, Window.EventHandler {
         this.world = new World(256, 256, 64);
         this.worldRenderer = new WorldRenderer(this.world);
         this.world.setStateListener(this.worldRenderer);
+        this.world.setEditHistory(this.editHistory);
         
         this.player = new PlayerEntity(this.world);
         for (int i = 0; i < 10; ++i) {
@@ -164,6 +172,8 @@ public class Game implements Runnable, Window.EventHandler {
                     this.update();
                 }
 
+                this.world.loadChunks(this.player.position.x, this.player.position.z, 4_000_000L);
+                this.world.flushChanges();
                 this.render(tickDelta);
 
                 if (this.rendeInfoOverlay) {
@@ -176,6 +186,8 @@ public class Game implements Runnable, Window.EventHandler {
                     if (ImGui.begin("Info", ImGuiWindowFlags.NoDecoration | ImGuiWindowFlags.AlwaysAutoResize | ImGuiWindowFlags.NoSavedSettings | ImGuiWindowFlags.NoFocusOnAppearing | ImGuiWindowFlags.NoNav)) {
                         ImGui.text(this.fps + " FPS " + this.tps + " TPS");
                         ImGui.text("E: " + entityRenderCount + "/" + this.zombies.size() + " P: " + ParticleSystem.rendered + "/" + this.particleSystem.particles.size() + " C: " + WorldRenderer.chunksRendererPerFrame + "/" + this.worldRenderer.getChunkCount() + " x=" + String.format("%.3f", this.player.position.x) + ",y=" + String.format("%.4f", this.player.position.y) + ",z=" + String.format("%.3f", this.player.position.z));
+                        CompressedSectionCache coldSections = this.world.getColdSections();
+                        ImGui.text("Cold: " + coldSections.size() + " H: " + coldSections.getHits() + " M: " + coldSections.getMisses() + " Saved: " + coldSections.getBytesSaved() / 1024 + " KB");
                         if (this.effect > 0) ImGui.text("Effect: " + this.framebuffer.getPostEffectShaderName(this.effect - 1));
                     }
                     ImGui.end();
@@ -184,6 +196,10 @@ public class Game implements Runnable, Window.EventHandler {
                 }
 
                 this.window.update();
+                if (startTime >= 0) {
+                    LOGGER.info("First frame after {} ms", TimeUtils.millisTime() - startTime);
+                    startTime = -1;
+                }
                 ++frameCounter;
 
                 while (TimeUtils.millisTime() - lastTime > 1000L) {
@@ -202,6 +218,7 @@ public class Game implements Runnable, Window.EventHandler {
             LOGGER.throwing(e);
         } finally {
             this.world.save();
+            this.world.close();
 
             LOGGER.info("Closing");
             this.selectionShader.close();
@@ -632,6 +649,9 @@ public class Game implements Runnable, Window.EventHandler {
 
         this.textRenderer.drawTextWithShadow(matrices, "0.0.9a", 2, 2, -1, 0f, 0f);
         this.textRenderer.drawTextWithShadow(matrices, this.fps + " fps", 2, 12, -1, 0f, 0f);
+        if (this.world.isSaving()) {
+            this.textRenderer.drawTextWithShadow(matrices, "Saving level..", 2, 22, -1, 0f, 0f);
+        }
     }
 
     private void renderBox(BufferBuilder builder, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
@@ -703,13 +723,29 @@ public class Game implements Runnable, Window.EventHandler {
             } else if (Keybinding.TOGGLE_FULLSCREEN.test(key)) {
                 this.window.toggleFullscreen();
             } else if (Keybinding.SAVE_WORLD_TO_DISK.test(key)) {
-                this.world.save();
+                long start = TimeUtils.millisTime();
+                this.world.saveAsync().thenAccept(success -> {
+                    if (success) {
+                        LOGGER.info("Saved world in {} ms", TimeUtils.millisTime() - start);
+                    }
+                });
+            } else if (Keybinding.SNAPSHOT_WORLD.test(key)) {
+                long start = TimeUtils.millisTime();
+                this.world.snapshotAsync(this.snapshotStore).thenAccept(manifest -> {
+                    if (manifest != null) {
+                        LOGGER.info("Wrote snapshot {} in {} ms", manifest.getFileName(), TimeUtils.millisTime() - start);
+                    }
+                });
             } else if (Keybinding.GO_TO_RANDOM_POS.test(key)) {
                 this.player.goToRandomPosition();
             } else if (Keybinding.FLY.test(key)) {
                 this.player.canFly = !this.player.canFly;
             } else if (Keybinding.NO_CLIP.test(key)) {
                 this.player.noClip = !this.player.noClip;
+            } else if (Keybinding.UNDO.test(key)) {
+                this.editHistory.undo(this.world);
+            } else if (Keybinding.REDO.test(key)) {
+                this.editHistory.redo(this.world);
             } else if (key == GLFW.GLFW_KEY_F3) {
                 this.rendeInfoOverlay = !this.rendeInfoOverlay;
             } else if (key == GLFW.GLFW_KEY_F7) {
@@ -730,6 +766,8 @@ public class Game implements Runnable, Window.EventHandler {
                 this.selectedBlockId = 2;
             } else if (key == GLFW.GLFW_KEY_6) {
                 this.selectedBlockId = 6;
+            } else if (key == GLFW.GLFW_KEY_7) {
+                this.selectedBlockId = 7;
             } else if (key == GLFW.GLFW_KEY_G) {
                 ZombieEntity zombie = new ZombieEntity(this.world);
                 zombie.setPosition(this.player.position.x, this.player.position.y, this.player.position.z);
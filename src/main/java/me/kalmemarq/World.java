@@ -1,200 +1,1037 @@
 package me.kalmemarq;
 
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import me.kalmemarq.block.Block;
 import me.kalmemarq.block.Blocks;
 import me.kalmemarq.util.BlockHitResult;
 import me.kalmemarq.util.Box;
-import me.kalmemarq.util.NoiseMap;
+import me.kalmemarq.util.Direction;
+import me.kalmemarq.world.BlockChangeRing;
+import me.kalmemarq.world.BlockRegion;
+import me.kalmemarq.world.ChangeSet;
+import me.kalmemarq.world.ChunkSection;
+import me.kalmemarq.world.CompressedSectionCache;
+import me.kalmemarq.world.EditHistory;
+import me.kalmemarq.world.LightEngine;
+import me.kalmemarq.world.RegionFile;
+import me.kalmemarq.world.SaveCodec;
+import me.kalmemarq.world.ScheduledTickQueue;
+import me.kalmemarq.world.SnapshotStore;
+import me.kalmemarq.world.WorldGenerator;
+import me.kalmemarq.world.WriteAheadLog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.joml.Vector3d;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
-public class World {
-    public static final int CHUNK_SIZE = 32;
+public class World implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger("World");
+    private static final int AUTOSAVE_INTERVAL = 20 * 30;
+    private static final int LOAD_RADIUS = 32;
+    private static final int COLD_SECTION_TICKS = 20 * 60;
+    private static final int COLD_SCAN_INTERVAL = 20;
+    private static final int WORKER_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int LOAD_BATCH = WORKER_COUNT * 2;
+    private static final int SAVE_BATCH = 256;
+    private static final int BULK_EDIT_LOG_LIMIT = 1 << 12;
+    private static final int CHANGE_RING_CAPACITY = 1 << 16;
+    private static final int HEIGHTMAP_SCAN_AREA = 256;
+    private static final int SCHEDULED_TICK_BUDGET = 1 << 12;
+    private static final int LOCK_STRIPES = 1 << 10;
+    private static final float[] BRIGHTNESS = createBrightnessTable();
+    private static final IntPredicate TICKABLE_BLOCKS = id -> Blocks.blocks[id].isTickable();
+    public static final int CHUNK_SIZE = ChunkSection.SIZE;
+    public static final int MAX_HORIZONTAL_SIZE = 1 << 22;
+    public static final int MAX_VERTICAL_SIZE = 1 << 12;
     public final int width;
     public final int height;
     public final int depth;
-    private final byte[] blocks;
+    private final int xChunks;
+    private final int yChunks;
+    private final int zChunks;
+    private final ChunkSection[] sections;
+    private final StampedLock[] sectionLocks;
+    private final long[] sectionVersions;
+    private final int lockMask;
+    private final Int2IntOpenHashMap tickableCounts = new Int2IntOpenHashMap();
+    private final IntArrayList tickingSections = new IntArrayList();
+    private final Int2IntOpenHashMap tickingSlots = new Int2IntOpenHashMap();
+    private final Map<Integer, ChunkSection> evictedSections = new ConcurrentHashMap<>();
+    private final CompressedSectionCache coldSections = new CompressedSectionCache();
     private final short[] heightmap;
+    private final BitSet dirtySections = new BitSet();
+    private final BitSet modifiedSections;
+    private final long[] loadOrder;
+    private final BitSet snapshotChanges = new BitSet();
+    private byte[][] snapshotHashes;
+    private volatile boolean snapshotHashesValid;
+    private final Path savePath;
+    private final Path editLogPath;
+    private final LongArrayList pendingEdits = new LongArrayList();
+    private final ChangeSet.Builder pendingChanges;
+    private final BlockChangeRing changeRing = new BlockChangeRing(CHANGE_RING_CAPACITY);
+    private final LightEngine lightEngine;
+    private final ScheduledTickQueue scheduledTicks;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "World Saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService workerExecutor = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "World Worker-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicInteger savesInProgress = new AtomicInteger();
+    private volatile boolean fullSaveRequired = true;
+    private boolean heightmapDirty;
+    private final ReadWriteLock regionLock = new ReentrantReadWriteLock();
+    private volatile RegionFile regionFile;
+    private volatile SaveCodec saveCodec = SaveCodec.DEFAULT;
+    private WriteAheadLog editLog;
+    private int ticksSinceAutosave;
+    private WorldGenerator generator;
+    private int loadCenterX = Integer.MIN_VALUE;
+    private int loadCenterZ = Integer.MIN_VALUE;
+    private int loadCursor;
+    private int viewDistance = 16;
+    private int accessClock;
+    private boolean randomTicking;
+    private boolean simulating;
+    private int residentSections;
     private WorldStateListener stateListener;
+    private EditHistory editHistory;
 
     private final Random random = new Random();
-    private int unprocessed;
+    private long unprocessed;
 
     public World(int width, int height, int depth) {
+        this(width, height, depth, Path.of("level.dat"));
+    }
+
+    public World(int width, int height, int depth, Path savePath) {
+        this.savePath = savePath;
+        this.editLogPath = getEditLogPath(savePath);
         this.width = width;
         this.height = height;
         this.depth = depth;
-        this.blocks = new byte[width * height * depth];
+        this.xChunks = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.yChunks = (depth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.zChunks = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if ((long) this.xChunks * this.yChunks * this.zChunks > Integer.MAX_VALUE - 8 || (long) width * height > Integer.MAX_VALUE - 8 ||
+                width > MAX_HORIZONTAL_SIZE || height > MAX_HORIZONTAL_SIZE || depth > MAX_VERTICAL_SIZE) {
+            throw new IllegalArgumentException("World of " + width + "x" + height + "x" + depth + " is too large");
+        }
+        this.sections = new ChunkSection[this.xChunks * this.yChunks * this.zChunks];
+        int stripes = 1;
+        while (stripes < this.sections.length && stripes < LOCK_STRIPES) {
+            stripes <<= 1;
+        }
+        this.sectionLocks = new StampedLock[stripes];
+        this.sectionVersions = new long[this.sectionLocks.length];
+        this.lockMask = this.sectionLocks.length - 1;
+        for (int i = 0; i < this.sectionLocks.length; ++i) {
+            this.sectionLocks[i] = new StampedLock();
+        }
+        this.modifiedSections = new BitSet(this.sections.length);
+        this.tickingSlots.defaultReturnValue(-1);
+        this.pendingChanges = new ChangeSet.Builder(this.xChunks, this.zChunks);
+        this.lightEngine = new LightEngine(this, this.pendingChanges);
+        this.scheduledTicks = new ScheduledTickQueue(this.xChunks, this.zChunks);
         this.heightmap = new short[width * height];
+        this.loadOrder = createLoadOrder(Math.min(Math.max(this.xChunks, this.zChunks), LOAD_RADIUS));
 
-        if (!this.load()) {
-            this.generate();
+        boolean loaded = this.load();
+        if (!loaded) {
+            this.generator = new WorldGenerator(this.random.nextLong(), width, height, depth);
+            this.generator.fillHeightmap(this.heightmap);
+            this.save();
         }
 
-        this.calculateHeightMap();
+        this.openEditLog(loaded);
     }
 
-    private void generate() {
-        NoiseMap noiseMap = new NoiseMap();
-		int[] heightmap1 = noiseMap.read(this.width, this.height, 0);
-		int[] heightmap2 = noiseMap.read(this.width, this.height, 0);
-		int[] controlFilter = noiseMap.read(this.width, this.height, 1);
-		int[] rockMap = noiseMap.read(this.width, this.height, 1);
-
-        for (int y = 0; y < this.depth; ++y) {
-            for (int z = 0; z < this.height; ++z) {
-                for (int x = 0; x < this.width; ++x) {
-                    int dh1 = heightmap1[x + z * this.width];
-                    int dh2 = heightmap2[x + z * this.width];
-                    int cfh = controlFilter[x + z * this.width];
-                    if (cfh < 128) {
-                        dh2 = dh1;
-                    }
+    private static Path getEditLogPath(Path savePath) {
+        String name = savePath.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return savePath.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + ".wal");
+    }
 
-                    int dh = Math.max(dh2, dh1);
+    public static World restore(SnapshotStore store, Path manifest, Path savePath) throws IOException {
+        store.restore(manifest, savePath);
+        Files.deleteIfExists(getEditLogPath(savePath));
 
-                    dh = dh / 8 + this.depth / 3;
-                    int rh = rockMap[x + z * this.width] / 8 + this.depth / 3;
-                    if (rh > dh - 2) {
-                        rh = dh - 2;
-                    }
+        int width, height, depth;
+        try (RegionFile region = RegionFile.open(savePath)) {
+            width = region.width;
+            height = region.height;
+            depth = region.depth;
+        }
+        return new World(width, height, depth, savePath);
+    }
+
+    private static long[] createLoadOrder(int radius) {
+        long[] order = new long[(radius * 2 + 1) * (radius * 2 + 1)];
+        int i = 0;
+        for (int dz = -radius; dz <= radius; ++dz) {
+            for (int dx = -radius; dx <= radius; ++dx) {
+                order[i++] = ((long) (dx * dx + dz * dz) << 32) | ((long) (dx + radius) << 16) | (dz + radius);
+            }
+        }
+        Arrays.sort(order);
 
-                    int i = (y * this.height + z) * this.width + x;
-                    int id = 0;
+        for (i = 0; i < order.length; ++i) {
+            order[i] = ((long) ((int) (order[i] >>> 16 & 0xFFFF) - radius) << 32) | (((int) (order[i] & 0xFFFF) - radius) & 0xFFFFFFFFL);
+        }
+        return order;
+    }
 
-                    if (y == dh) {
-                        id = Blocks.GRASS.numericId;
-                    } else if (y < dh) {
-                        id = Blocks.DIRT.numericId;
-                    }
+    private void resetSections() {
+        for (int i = 0; i < this.sections.length; ++i) {
+            this.sections[i] = new ChunkSection();
+        }
+        this.residentSections = this.sections.length;
+    }
 
-                    if (y <= rh) {
-                        id = Blocks.STONE.numericId;
+    public boolean load() {
+        if (!Files.exists(this.savePath)) return false;
+        if (RegionFile.isRegionFile(this.savePath)) {
+            return this.loadRegion();
+        }
+
+        try (DataInputStream e = new DataInputStream(new GZIPInputStream(Files.newInputStream(this.savePath)))) {
+            this.resetSections();
+            byte[] row = new byte[this.width];
+            for (int y = 0; y < this.depth; ++y) {
+                for (int z = 0; z < this.height; ++z) {
+                    e.readFully(row);
+                    for (int x = 0; x < this.width; ++x) {
+                        this.setBlockIdRaw(x, y, z, row[x] & 0xFF);
                     }
+                }
+            }
+        } catch (Exception ignored) {
+            Arrays.fill(this.sections, null);
+            this.residentSections = 0;
+            for (int i = 0; i < this.sections.length; ++i) {
+                this.setTickableCount(i, 0);
+            }
+            return false;
+        }
+
+        for (ChunkSection section : this.sections) {
+            section.trim();
+        }
+        this.calculateHeightMap();
+        return true;
+    }
 
-                    this.blocks[i] = (byte)id;
+    private boolean loadRegion() {
+        RegionFile region = null;
+        try {
+            region = RegionFile.open(this.savePath);
+            if (region.width != this.width || region.height != this.height || region.depth != this.depth || region.getChunkCount() != this.sections.length) {
+                throw new IOException("World size mismatch, expected " + this.width + "x" + this.height + "x" + this.depth + " but found " + region.width + "x" + region.height + "x" + region.depth);
+            }
+
+            this.saveCodec = region.getCodec();
+            byte[] metadata = region.readMetadata();
+            if (metadata != null) {
+                this.readMetadata(metadata);
+            }
+            this.regionFile = region;
+
+            for (int i = 0; i < this.sections.length; ++i) {
+                if (region.hasChunk(i)) {
+                    this.modifiedSections.set(i);
                 }
             }
+
+            if (metadata == null) {
+                this.calculateHeightMap();
+                this.fullSaveRequired = true;
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to load world from {}", this.savePath, e);
+            if (region != null) {
+                try {
+                    region.close();
+                } catch (IOException ignored) {
+                }
+            }
+            this.regionFile = null;
+            this.generator = null;
+            this.modifiedSections.clear();
+            return false;
+        }
+
+        this.fullSaveRequired = false;
+        return true;
+    }
+
+    private ChunkSection loadSection(int index) {
+        return this.installSection(index, this.readSection(index));
+    }
+
+    private void loadSections(IntArrayList indices) {
+        if (indices.size() == 1) {
+            this.loadSection(indices.getInt(0));
+            return;
+        }
+
+        List<CompletableFuture<ChunkSection>> sections = new ArrayList<>(indices.size());
+        for (int i = 0; i < indices.size(); ++i) {
+            int index = indices.getInt(i);
+            sections.add(CompletableFuture.supplyAsync(() -> this.readSection(index), this.workerExecutor));
+        }
+
+        for (int i = 0; i < indices.size(); ++i) {
+            this.installSection(indices.getInt(i), sections.get(i).join());
+        }
+    }
+
+    private ChunkSection readSection(int index) {
+        ChunkSection section = this.evictedSections.get(index);
+        return section != null ? section : this.readPersistedSection(index);
+    }
+
+    private ChunkSection readPersistedSection(int index) {
+        this.regionLock.readLock().lock();
+        try {
+            RegionFile region = this.regionFile;
+            if (region != null && region.hasChunk(index)) {
+                ChunkSection section = ChunkSection.read(new DataInputStream(new ByteArrayInputStream(region.readChunk(index))));
+                section.trim();
+                return section;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load chunk " + index + " from " + this.savePath, e);
+        } finally {
+            this.regionLock.readLock().unlock();
+        }
+
+        if (this.modifiedSections.get(index)) {
+            throw new IllegalStateException("Chunk " + index + " was modified but has no saved copy");
+        }
+
+        if (this.generator != null) {
+            return this.generator.generateSection(index % this.xChunks, index / (this.xChunks * this.zChunks), index / this.xChunks % this.zChunks);
+        }
+        return new ChunkSection();
+    }
+
+    private ChunkSection installSection(int index, ChunkSection section) {
+        StampedLock lock = this.getSectionLock(index);
+        long stamp = lock.writeLock();
+        this.sections[index] = section;
+        this.evictedSections.remove(index, section);
+        lock.unlockWrite(stamp);
+        this.setTickableCount(index, section.countMatching(TICKABLE_BLOCKS));
+        section.setLastAccess(this.accessClock);
+        ++this.residentSections;
+
+        if (this.stateListener != null) {
+            this.stateListener.onChunkLoaded(index % this.xChunks, index / (this.xChunks * this.zChunks), index / this.xChunks % this.zChunks);
+        }
+        return section;
+    }
+
+    private boolean isPersisted(int index) {
+        if (!this.modifiedSections.get(index)) return this.generator != null;
+        RegionFile region = this.regionFile;
+        return !this.fullSaveRequired && !this.isSaving() && !this.dirtySections.get(index) && region != null && region.hasChunk(index);
+    }
+
+    private void unloadSection(int index) {
+        StampedLock lock = this.getSectionLock(index);
+        long stamp = lock.writeLock();
+        ChunkSection section = this.sections[index];
+        if (!this.isPersisted(index)) {
+            if (section == null) {
+                section = this.coldSections.take(index);
+            }
+            section.markShared();
+            this.evictedSections.put(index, section);
+        } else if (section == null) {
+            this.coldSections.remove(index);
+        }
+        this.sections[index] = null;
+        lock.unlockWrite(stamp);
+        this.setTicking(index, false);
+        --this.residentSections;
+        int column = index % (this.xChunks * this.zChunks);
+        if (!this.isColumnLoaded(column)) {
+            this.lightEngine.unloadColumn(column % this.xChunks, column / this.xChunks);
+        }
+
+        if (this.stateListener != null) {
+            this.stateListener.onChunkUnloaded(index % this.xChunks, index / (this.xChunks * this.zChunks), index / this.xChunks % this.zChunks);
+        }
+    }
+
+    private void readMetadata(byte[] metadata) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(metadata));
+        int version = input.readUnsignedByte();
+        if (version < 1 || version > 3) throw new IOException("Unsupported world metadata version " + version);
+        for (int i = 0; i < this.heightmap.length; ++i) {
+            this.heightmap[i] = input.readShort();
         }
 
-		for (int i = 0, attempts = this.width * this.height * this.depth / 256 / 64; i < attempts; ++i) {
-            this.generateRandomCave();
-        }
-    }
-
-    private void generateRandomCave() {
-        float cavePosX = this.random.nextFloat() * (float)this.width;
-        float cavePosY = this.random.nextFloat() * (float)this.depth;
-        float cavePosZ = this.random.nextFloat() * (float)this.height;
-
-        int caveLength = (int)(this.random.nextFloat() + this.random.nextFloat() * 150f);
-        float caveDirectionXY = (float)((double)this.random.nextFloat() * Math.PI * 2d);
-        float caveDirectionZ = (float)((double)this.random.nextFloat() * Math.PI * 2d);
-        
-        float directionChangeXY = 0f;
-        float directionChangeZ = 0f;
-    
-        for (int l = 0; l < caveLength; ++l) {
-            cavePosX = (float)((double)cavePosX + Math.sin((double)caveDirectionXY) * Math.cos((double)caveDirectionZ));
-            cavePosZ = (float)((double)cavePosZ + Math.cos((double)caveDirectionXY) * Math.cos((double)caveDirectionZ));
-            cavePosY = (float)((double)cavePosY + Math.sin((double)caveDirectionZ));
-            
-            caveDirectionXY += directionChangeXY * 0.2f;
-            directionChangeXY = directionChangeXY * 0.9f + this.random.nextFloat() - this.random.nextFloat();
-            caveDirectionZ += directionChangeZ * 0.5f;
-            caveDirectionZ *= 0.5f;
-            directionChangeZ = directionChangeZ * 0.9f + this.random.nextFloat() - this.random.nextFloat();
-            
-            float caveRadius = (float)(Math.sin((double)l * Math.PI / (double)caveLength) * 2.5d + 1d);
-
-            this.carveSphere(cavePosX, cavePosY, cavePosZ, caveRadius, Blocks.STONE);
-        }
-    }
-
-    private void carveSphere(float posX, float posY, float posZ, float carveRadius, Block... blocksToReplace) {
-        int minX = Math.max((int)(posX - carveRadius), 1);
-        int maxX = Math.min((int)(posX + carveRadius), this.width - 1);
-        int minY = Math.max((int)(posY - carveRadius), 1);
-        int maxY = Math.min((int)(posY + carveRadius), this.depth - 1);
-        int minZ = Math.max((int)(posZ - carveRadius), 1);
-        int maxZ = Math.min((int)(posZ + carveRadius), this.height - 1);
-
-        float carveRadiusSquared = carveRadius * carveRadius;
-
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    float xd = (float)x - posX;
-                    float yd = (float)y - posY;
-                    float zd = (float)z - posZ;
-                    
-                    float distanceSquared = xd * xd + yd * yd * 2f + zd * zd;
-                    
-                    if (distanceSquared < carveRadiusSquared) {
-                        int i = (y * this.height + z) * this.width + x;
-                        
-                        for (Block blockToReplace : blocksToReplace) {
-                            if (blocks[i] == blockToReplace.numericId) {
-                                blocks[i] = 0;
+        if (version >= 2 && input.readBoolean()) {
+            this.generator = new WorldGenerator(input.readLong(), this.width, this.height, this.depth);
+        }
+
+        if (version >= 3) {
+            this.scheduledTicks.read(input);
+        }
+    }
+
+    private static byte[] serializeMetadata(short[] heightmap, WorldGenerator generator, byte[] scheduledTicks) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(heightmap.length * 2 + 10 + scheduledTicks.length);
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeByte(3);
+        for (short height : heightmap) {
+            data.writeShort(height);
+        }
+        data.writeBoolean(generator != null);
+        if (generator != null) {
+            data.writeLong(generator.seed);
+        }
+        data.write(scheduledTicks);
+        return output.toByteArray();
+    }
+
+    private void openEditLog(boolean replay) {
+        try {
+            this.editLog = WriteAheadLog.open(this.editLogPath, this.width, this.height, this.depth);
+            if (replay) {
+                long[] replayed = new long[1];
+                this.editLog.replay(new WriteAheadLog.Replayer() {
+                    @Override
+                    public void block(long record) {
+                        int x = WriteAheadLog.unpackX(record);
+                        int y = WriteAheadLog.unpackY(record);
+                        int z = WriteAheadLog.unpackZ(record);
+                        if (World.this.isOutOfBounds(x, y, z)) return;
+                        World.this.setBlockIdRaw(x, y, z, WriteAheadLog.unpackId(record));
+                        World.this.calculateHeightMap(x, z, x + 1, z + 1);
+                        World.this.markModified(World.this.getSectionIndex(x, y, z));
+                        World.this.heightmapDirty = true;
+                        ++replayed[0];
+                    }
+
+                    @Override
+                    public void box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int matchId, int fillId) {
+                        maxX = Math.min(maxX, World.this.width);
+                        maxY = Math.min(maxY, World.this.depth);
+                        maxZ = Math.min(maxZ, World.this.height);
+                        if (minX >= maxX || minY >= maxY || minZ >= maxZ) return;
+                        for (int y = minY; y < maxY; ++y) {
+                            for (int z = minZ; z < maxZ; ++z) {
+                                for (int x = minX; x < maxX; ++x) {
+                                    if (matchId >= 0 && World.this.getBlockId(x, y, z) != matchId) continue;
+                                    World.this.setBlockIdRaw(x, y, z, fillId);
+                                    World.this.markModified(World.this.getSectionIndex(x, y, z));
+                                    ++replayed[0];
+                                }
                             }
                         }
+                        World.this.calculateHeightMap(minX, minZ, maxX, maxZ);
+                        World.this.heightmapDirty = true;
                     }
+                });
+                if (replayed[0] > 0) {
+                    LOGGER.info("Replayed {} block edits from {}", replayed[0], this.editLogPath);
                 }
+            } else {
+                this.editLog.truncate();
             }
+        } catch (IOException e) {
+            LOGGER.error("Failed to open edit log {}", this.editLogPath, e);
+            this.editLog = null;
         }
     }
 
-    public boolean load() {
-        try (DataInputStream e = new DataInputStream(new GZIPInputStream(Files.newInputStream(Path.of("level.dat"))))) {
-            e.readFully(this.blocks);
-        } catch (Exception ignored) {
-            return false;
-        }
+    private void flushEditLog() {
+        if (this.pendingEdits.isEmpty()) return;
+        long[] records = this.pendingEdits.toLongArray();
+        this.pendingEdits.clear();
 
-        return true;
+        this.saveExecutor.execute(() -> {
+            try {
+                this.editLog.append(records);
+            } catch (IOException e) {
+                LOGGER.error("Failed to append to edit log {}", this.editLogPath, e);
+            }
+        });
     }
 
     public void save() {
-        try (DataOutputStream e = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(Path.of("level.dat"))))) {
-            e.write(this.blocks);
-        } catch (Exception ignored) {
+        this.saveAsync().join();
+    }
+
+    public CompletableFuture<Boolean> saveAsync() {
+        this.flushEditLog();
+        this.ticksSinceAutosave = 0;
+
+        boolean fullSave = this.fullSaveRequired;
+        BitSet snapshotIndices = (BitSet) (fullSave ? this.modifiedSections : this.dirtySections).clone();
+        if (fullSave && this.generator == null) {
+            snapshotIndices.set(0, this.sections.length);
+        }
+
+        ChunkSection[] snapshot = new ChunkSection[this.sections.length];
+        for (int i = snapshotIndices.nextSetBit(0); i >= 0; i = snapshotIndices.nextSetBit(i + 1)) {
+            ChunkSection section = this.sections[i];
+            if (section == null) {
+                section = this.coldSections.contains(i) ? this.getSection(i) : this.evictedSections.get(i);
+            }
+            if (section != null) {
+                section.markShared();
+                snapshot[i] = section;
+            }
+        }
+        this.dirtySections.clear();
+
+        short[] heightmap = fullSave || this.heightmapDirty || this.scheduledTicks.isDirty() ? this.heightmap.clone() : null;
+        byte[] scheduledTicks = heightmap != null ? this.scheduledTicks.toByteArray() : null;
+        long scheduledTicksVersion = this.scheduledTicks.getVersion();
+        this.heightmapDirty = false;
+
+        this.savesInProgress.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                this.writeSnapshot(snapshot, snapshotIndices, heightmap, scheduledTicks, fullSave);
+                if (scheduledTicks != null) {
+                    this.scheduledTicks.markSaved(scheduledTicksVersion);
+                }
+                for (int i = 0; i < snapshot.length; ++i) {
+                    if (snapshot[i] != null) {
+                        this.evictedSections.remove(i, snapshot[i]);
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                LOGGER.error("Failed to save world to {}", this.savePath, e);
+                this.fullSaveRequired = true;
+                return false;
+            } finally {
+                this.savesInProgress.decrementAndGet();
+            }
+        }, this.saveExecutor);
+    }
+
+    public SaveCodec getSaveCodec() {
+        return this.saveCodec;
+    }
+
+    public void setSaveCodec(SaveCodec codec) {
+        this.saveCodec = codec;
+        RegionFile region = this.regionFile;
+        if (region != null && region.getCodec().id() != codec.id()) {
+            this.fullSaveRequired = true;
+        }
+    }
+
+    public boolean isSaving() {
+        return this.savesInProgress.get() > 0;
+    }
+
+    private void writeSnapshot(ChunkSection[] snapshot, BitSet snapshotIndices, short[] heightmap, byte[] scheduledTicks, boolean fullSave) throws IOException {
+        if (fullSave || this.regionFile == null) {
+            if (!fullSave) {
+                throw new IOException("No region file to update, a full save is required");
+            }
+
+            Path tempPath = this.savePath.resolveSibling(this.savePath.getFileName() + ".tmp");
+            try (RegionFile region = RegionFile.create(tempPath, this.width, this.height, this.depth, snapshot.length, this.saveCodec)) {
+                this.writeChunks(region, snapshot, snapshotIndices, this.regionFile);
+                region.writeMetadata(serializeMetadata(heightmap, this.generator, scheduledTicks));
+                region.flush();
+            }
+
+            this.replaceRegionFile(tempPath);
+            this.fullSaveRequired = false;
+        } else {
+            this.writeChunks(this.regionFile, snapshot, snapshotIndices, null);
+            if (heightmap != null) {
+                this.regionFile.writeMetadata(serializeMetadata(heightmap, this.generator, scheduledTicks));
+            }
+            this.regionFile.flush();
+        }
+
+        if (this.editLog != null) {
+            this.editLog.truncate();
+        }
+    }
+
+    private void replaceRegionFile(Path tempPath) throws IOException {
+        this.regionLock.writeLock().lock();
+        try {
+            RegionFile previous = this.regionFile;
+            if (previous != null) {
+                previous.close();
+            }
+            try {
+                Files.move(tempPath, this.savePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (previous != null) {
+                    this.regionFile = RegionFile.open(this.savePath);
+                }
+                throw e;
+            }
+            this.regionFile = RegionFile.open(this.savePath);
+        } finally {
+            this.regionLock.writeLock().unlock();
+        }
+    }
+
+    public CompletableFuture<Path> snapshotAsync(SnapshotStore store) {
+        this.flushEditLog();
+
+        BitSet snapshotIndices = (BitSet) this.modifiedSections.clone();
+        if (this.generator == null) {
+            snapshotIndices.set(0, this.sections.length);
+        }
+
+        boolean rehashAll = !this.snapshotHashesValid;
+        BitSet changes = rehashAll ? (BitSet) snapshotIndices.clone() : (BitSet) this.snapshotChanges.clone();
+        this.snapshotChanges.clear();
+
+        ChunkSection[] snapshot = new ChunkSection[this.sections.length];
+        for (int i = changes.nextSetBit(0); i >= 0; i = changes.nextSetBit(i + 1)) {
+            ChunkSection section = this.sections[i];
+            if (section == null) {
+                section = this.coldSections.contains(i) ? this.getSection(i) : this.evictedSections.get(i);
+            }
+            if (section != null) {
+                section.markShared();
+                snapshot[i] = section;
+            }
+        }
+
+        short[] heightmap = this.heightmap.clone();
+        byte[] scheduledTicks = this.scheduledTicks.toByteArray();
+        SaveCodec codec = this.saveCodec;
+
+        this.savesInProgress.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.writeSnapshotManifest(store, snapshot, snapshotIndices, changes, heightmap, scheduledTicks, codec, rehashAll);
+            } catch (IOException e) {
+                LOGGER.error("Failed to write world snapshot to {}", store.getRoot(), e);
+                this.snapshotHashesValid = false;
+                return null;
+            } finally {
+                this.savesInProgress.decrementAndGet();
+            }
+        }, this.saveExecutor);
+    }
+
+    private Path writeSnapshotManifest(SnapshotStore store, ChunkSection[] snapshot, BitSet snapshotIndices, BitSet changes, short[] heightmap, byte[] scheduledTicks, SaveCodec codec, boolean rehashAll) throws IOException {
+        if (rehashAll || this.snapshotHashes == null) {
+            this.snapshotHashes = new byte[snapshot.length][];
+        }
+
+        byte[][] chunkHashes = new byte[snapshot.length][];
+        for (int i = snapshotIndices.nextSetBit(0); i >= 0; i = snapshotIndices.nextSetBit(i + 1)) {
+            byte[] hash = changes.get(i) ? null : this.snapshotHashes[i];
+            if (hash == null) {
+                byte[] data = null;
+                if (snapshot[i] != null) {
+                    data = serializeSection(snapshot[i]);
+                } else if (this.regionFile != null && this.regionFile.hasChunk(i)) {
+                    data = this.regionFile.readChunk(i);
+                }
+                hash = data != null ? store.putObject(data) : null;
+                this.snapshotHashes[i] = hash;
+            }
+            chunkHashes[i] = hash;
+        }
+
+        byte[] metadataHash = store.putObject(serializeMetadata(heightmap, this.generator, scheduledTicks));
+        Path manifest = store.writeManifest(this.width, this.height, this.depth, codec, chunkHashes, metadataHash);
+        this.snapshotHashesValid = true;
+        return manifest;
+    }
+
+    private void writeChunks(RegionFile region, ChunkSection[] snapshot, BitSet snapshotIndices, RegionFile source) throws IOException {
+        int[] indices = snapshotIndices.stream().toArray();
+        boolean copyEncoded = source != null && source.getCodec().id() == region.getCodec().id();
+
+        for (int start = 0; start < indices.length; start += SAVE_BATCH) {
+            int end = Math.min(start + SAVE_BATCH, indices.length);
+            List<CompletableFuture<byte[]>> encoded = new ArrayList<>(end - start);
+            for (int i = start; i < end; ++i) {
+                int index = indices[i];
+                ChunkSection section = snapshot[index];
+                encoded.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        if (section != null) return region.encode(serializeSection(section));
+                        if (source == null || !source.hasChunk(index)) return null;
+                        return copyEncoded ? source.readEncodedChunk(index) : region.encode(source.readChunk(index));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, this.workerExecutor));
+            }
+
+            for (int i = start; i < end; ++i) {
+                byte[] data;
+                try {
+                    data = encoded.get(i - start).join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+                    throw e;
+                }
+                if (data != null) {
+                    region.writeEncodedChunk(indices[i], data);
+                }
+            }
+        }
+    }
+
+    private static byte[] serializeSection(ChunkSection section) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        section.write(new DataOutputStream(output));
+        return output.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        this.flushEditLog();
+        this.saveExecutor.execute(() -> {
+            if (this.editLog != null) {
+                try {
+                    this.editLog.close();
+                } catch (IOException e) {
+                    LOGGER.error("Failed to close {}", this.editLogPath, e);
+                }
+                this.editLog = null;
+            }
+            if (this.regionFile != null) {
+                try {
+                    this.regionFile.close();
+                } catch (IOException e) {
+                    LOGGER.error("Failed to close {}", this.savePath, e);
+                }
+                this.regionFile = null;
+            }
+        });
+        this.saveExecutor.shutdown();
+        this.coldSections.close();
+
+        try {
+            if (!this.saveExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.warn("Timed out waiting for world saves to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        this.workerExecutor.shutdown();
     }
 
     public void tick() {
-        this.unprocessed += this.width * this.height * this.depth;
-        int ticks = this.unprocessed / 400;
+        ++this.accessClock;
+        this.unprocessed += (long) this.tickingSections.size() * ChunkSection.VOLUME;
+        long ticks = this.unprocessed / 400;
         this.unprocessed -= ticks * 400;
 
-        for(int i = 0; i < ticks; ++i) {
-            int x = this.random.nextInt(this.width);
-            int y = this.random.nextInt(this.depth);
-            int z = this.random.nextInt(this.height);
-            Block tile = this.getBlock(x, y, z);
+        this.simulating = true;
+        this.randomTicking = true;
+        for(long i = 0; i < ticks && !this.tickingSections.isEmpty(); ++i) {
+            int index = this.tickingSections.getInt(this.random.nextInt(this.tickingSections.size()));
+            int voxel = this.random.nextInt(ChunkSection.VOLUME);
+            ChunkSection section = this.sections[index];
+            int x = ((index % this.xChunks) << ChunkSection.SIZE_BITS) | (voxel & ChunkSection.MASK);
+            int y = ((index / (this.xChunks * this.zChunks)) << ChunkSection.SIZE_BITS) | (voxel >> (ChunkSection.SIZE_BITS * 2));
+            int z = ((index / this.xChunks % this.zChunks) << ChunkSection.SIZE_BITS) | ((voxel >> ChunkSection.SIZE_BITS) & ChunkSection.MASK);
+            if (this.isOutOfBounds(x, y, z)) continue;
+            Block tile = Blocks.blocks[section.get(voxel)];
             if (tile.isTickable()) {
                 tile.tick(this, x, y, z, this.random);
             }
         }
+        this.randomTicking = false;
+        this.scheduledTicks.run(SCHEDULED_TICK_BUDGET, this::runScheduledTick);
+        this.simulating = false;
+        this.lightEngine.tick();
+        this.flushChanges();
+
+        if (this.accessClock % COLD_SCAN_INTERVAL == 0) {
+            this.compressColdSections();
+        }
+
+        this.flushEditLog();
+        if (++this.ticksSinceAutosave >= AUTOSAVE_INTERVAL && (this.fullSaveRequired || !this.dirtySections.isEmpty() || this.scheduledTicks.isDirty())) {
+            this.saveAsync();
+        }
+    }
+
+    public int getViewDistance() {
+        return this.viewDistance;
+    }
+
+    public void setViewDistance(int viewDistance) {
+        this.viewDistance = Math.clamp(viewDistance, 2, LOAD_RADIUS);
+        this.loadCursor = 0;
+    }
+
+    public int getResidentSectionCount() {
+        return this.residentSections;
+    }
+
+    public CompressedSectionCache getColdSections() {
+        return this.coldSections;
+    }
+
+    public boolean unloadChunk(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return false;
+        int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+        if (!this.isSectionLoaded(index)) return false;
+        this.unloadSection(index);
+        return true;
+    }
+
+    public boolean compressChunk(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return false;
+        return this.compressSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX);
+    }
+
+    private void compressColdSections() {
+        for (int i = 0; i < this.sections.length; ++i) {
+            ChunkSection section = this.sections[i];
+            if (section == null || section.isUniform() || this.accessClock - section.getLastAccess() < COLD_SECTION_TICKS) continue;
+            this.compressSection(i);
+        }
+    }
+
+    private boolean compressSection(int index) {
+        ChunkSection section = this.sections[index];
+        if (section == null || this.tickableCounts.get(index) > 0 || this.dirtySections.get(index)) return false;
+        StampedLock lock = this.getSectionLock(index);
+        long stamp = lock.writeLock();
+        boolean compressed = this.coldSections.put(index, section);
+        if (compressed) {
+            this.sections[index] = null;
+        }
+        lock.unlockWrite(stamp);
+        return compressed;
+    }
+
+    public void loadChunks(float x, float z, long budgetNanos) {
+        int centerX = Math.floorDiv((int) Math.floor(x), CHUNK_SIZE);
+        int centerZ = Math.floorDiv((int) Math.floor(z), CHUNK_SIZE);
+        if (centerX != this.loadCenterX || centerZ != this.loadCenterZ) {
+            this.loadCenterX = centerX;
+            this.loadCenterZ = centerZ;
+            this.loadCursor = 0;
+        }
+
+        this.unloadChunks(centerX, centerZ);
+
+        long deadline = System.nanoTime() + budgetNanos;
+        IntArrayList batch = new IntArrayList(LOAD_BATCH + this.yChunks);
+        while (System.nanoTime() < deadline) {
+            batch.clear();
+            for (; this.loadCursor < this.loadOrder.length && batch.size() < LOAD_BATCH; ++this.loadCursor) {
+                int dx = (int) (this.loadOrder[this.loadCursor] >> 32);
+                int dz = (int) this.loadOrder[this.loadCursor];
+                if (dx * dx + dz * dz > this.viewDistance * this.viewDistance) {
+                    this.loadCursor = this.loadOrder.length;
+                    break;
+                }
+
+                int chunkX = centerX + dx;
+                int chunkZ = centerZ + dz;
+                if (chunkX < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkZ >= this.zChunks) continue;
+
+                for (int chunkY = 0; chunkY < this.yChunks; ++chunkY) {
+                    int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+                    if (!this.isSectionLoaded(index)) {
+                        batch.add(index);
+                    }
+                }
+            }
+
+            if (batch.isEmpty()) return;
+            this.loadSections(batch);
+        }
+    }
+
+    private void unloadChunks(int centerX, int centerZ) {
+        int diameter = this.viewDistance * 2 + 3;
+        int maxResident = diameter * diameter * this.yChunks;
+        if (this.residentSections <= maxResident || this.isSaving()) return;
+
+        int keepDistance = this.viewDistance + 1;
+        LongArrayList candidates = new LongArrayList();
+        for (int i = 0; i < this.sections.length; ++i) {
+            if (!this.isSectionLoaded(i)) continue;
+            int dx = i % this.xChunks - centerX;
+            int dz = i / this.xChunks % this.zChunks - centerZ;
+            if (dx * dx + dz * dz > keepDistance * keepDistance) {
+                ChunkSection section = this.sections[i];
+                candidates.add(((long) (section != null ? section.getLastAccess() : 0) << 32) | i);
+            }
+        }
+
+        long[] lru = candidates.toLongArray();
+        Arrays.sort(lru);
+        for (int i = 0; i < lru.length && this.residentSections > maxResident; ++i) {
+            this.unloadSection((int) lru[i]);
+        }
+    }
+
+    public long getVolume() {
+        return (long) this.width * this.height * this.depth;
     }
 
     public void setStateListener(WorldStateListener stateListener) {
         this.stateListener = stateListener;
     }
 
+    public boolean scheduleTick(int x, int y, int z, int delay) {
+        if (this.isOutOfBounds(x, y, z)) return false;
+        return this.scheduledTicks.schedule(x, y, z, delay);
+    }
+
+    public boolean isTickScheduled(int x, int y, int z) {
+        return !this.isOutOfBounds(x, y, z) && this.scheduledTicks.isScheduled(x, y, z);
+    }
+
+    public ScheduledTickQueue getScheduledTicks() {
+        return this.scheduledTicks;
+    }
+
+    private void runScheduledTick(long position) {
+        int x = WriteAheadLog.unpackX(position);
+        int y = WriteAheadLog.unpackY(position);
+        int z = WriteAheadLog.unpackZ(position);
+        Blocks.blocks[this.getBlockId(x, y, z)].scheduledTick(this, x, y, z, this.random);
+    }
+
+    public void setEditHistory(EditHistory editHistory) {
+        this.editHistory = editHistory;
+    }
+
     public void calculateHeightMap() {
         this.calculateHeightMap(0, 0, this.width, this.height);
     }
 
     public void calculateHeightMap(int minX, int minZ, int maxX, int maxZ) {
+        minX = Math.max(minX, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, this.width);
+        maxZ = Math.min(maxZ, this.height);
+        if (minX >= maxX || minZ >= maxZ) return;
+        if ((maxX - minX) * (maxZ - minZ) < HEIGHTMAP_SCAN_AREA) {
+            this.calculateHeightMapScalar(minX, minZ, maxX, maxZ);
+            return;
+        }
+
+        int fromChunkX = minX >> ChunkSection.SIZE_BITS;
+        int fromChunkZ = minZ >> ChunkSection.SIZE_BITS;
+        int toChunkX = (maxX - 1) >> ChunkSection.SIZE_BITS;
+        int toChunkZ = (maxZ - 1) >> ChunkSection.SIZE_BITS;
+        if (fromChunkX == toChunkX && fromChunkZ == toChunkZ) {
+            this.scanHeightColumn(fromChunkX, fromChunkZ, minX, minZ, maxX, maxZ, false);
+            return;
+        }
+
+        int columnsX = toChunkX - fromChunkX + 1;
+        int columns = columnsX * (toChunkZ - fromChunkZ + 1);
+        int batch = Math.max(1, columns / (WORKER_COUNT * 4));
+        List<CompletableFuture<BitSet>> tasks = new ArrayList<>();
+        for (int start = 0; start < columns; start += batch) {
+            int from = start;
+            int to = Math.min(start + batch, columns);
+            int fromX = minX, fromZ = minZ, toX = maxX, toZ = maxZ;
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                BitSet skipped = new BitSet();
+                for (int i = from; i < to; ++i) {
+                    if (!this.scanHeightColumn(fromChunkX + i % columnsX, fromChunkZ + i / columnsX, fromX, fromZ, toX, toZ, true)) {
+                        skipped.set(i);
+                    }
+                }
+                return skipped;
+            }, this.workerExecutor));
+        }
+
+        for (CompletableFuture<BitSet> task : tasks) {
+            BitSet skipped = task.join();
+            for (int i = skipped.nextSetBit(0); i >= 0; i = skipped.nextSetBit(i + 1)) {
+                this.scanHeightColumn(fromChunkX + i % columnsX, fromChunkZ + i / columnsX, minX, minZ, maxX, maxZ, false);
+            }
+        }
+    }
+
+    private boolean scanHeightColumn(int chunkX, int chunkZ, int minX, int minZ, int maxX, int maxZ, boolean residentOnly) {
+        int baseX = chunkX << ChunkSection.SIZE_BITS;
+        int baseZ = chunkZ << ChunkSection.SIZE_BITS;
+        int fromX = Math.max(minX - baseX, 0);
+        int fromZ = Math.max(minZ - baseZ, 0);
+        int toX = Math.min(maxX - baseX, ChunkSection.SIZE);
+        int toZ = Math.min(maxZ - baseZ, ChunkSection.SIZE);
+
+        short[] heights = new short[ChunkSection.SIZE * ChunkSection.SIZE];
+        for (int z = fromZ; z < toZ; ++z) {
+            Arrays.fill(heights, (z << ChunkSection.SIZE_BITS) + fromX, (z << ChunkSection.SIZE_BITS) + toX, (short) -1);
+        }
+
+        int unresolved = (toX - fromX) * (toZ - fromZ);
+        for (int chunkY = this.yChunks - 1; chunkY >= 0 && unresolved > 0; --chunkY) {
+            int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+            ChunkSection section = residentOnly ? this.sections[index] : this.getSection(index);
+            if (section == null) return false;
+            unresolved = section.scanHeights(heights, chunkY << ChunkSection.SIZE_BITS, unresolved);
+        }
+
+        for (int z = fromZ; z < toZ; ++z) {
+            System.arraycopy(heights, (z << ChunkSection.SIZE_BITS) + fromX, this.heightmap, (baseZ + z) * this.width + baseX + fromX, toX - fromX);
+        }
+        return true;
+    }
+
+    private void calculateHeightMapScalar(int minX, int minZ, int maxX, int maxZ) {
         for (int x = minX; x < maxX; ++x) {
             for (int z = minZ; z < maxZ; ++z) {
                 int y = this.depth - 1;
@@ -210,59 +1047,643 @@ public class World {
 
     private void notifyChangesOfBlock(int x, int y, int z) {
         this.calculateHeightMap(x, z, x + 1, z + 1);
+        this.heightmapDirty = true;
+        this.lightEngine.update();
+        this.pendingChanges.add(x, y, z);
+    }
+
+    public void flushChanges() {
+        if (this.pendingChanges.isEmpty()) return;
+        ChangeSet changes = this.pendingChanges.build(this.accessClock);
         if (this.stateListener != null) {
-            int chunkX = x / CHUNK_SIZE;
-            int chunkY = y / CHUNK_SIZE;
-            int chunkZ = z / CHUNK_SIZE;
-            int localX = x % CHUNK_SIZE;
-            int localY = y % CHUNK_SIZE;
-            int localZ = z % CHUNK_SIZE;
-            this.stateListener.onChunkModified(chunkX, chunkY, chunkZ);
-            if (localX == 0) {
-                this.stateListener.onChunkModified(chunkX - 1, chunkY, chunkZ);
-            } else if (localX == CHUNK_SIZE - 1) {
-                this.stateListener.onChunkModified(chunkX + 1, chunkY, chunkZ);
+            this.stateListener.onChunksModified(changes);
+        }
+    }
+
+    public boolean isOutOfBounds(int x, int y, int z) {
+        return x < 0 || y < 0 || z < 0 || x >= this.width || y >= this.depth || z >= this.height;
+    }
+
+    public boolean isUniform(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return true;
+        return this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX).isUniform();
+    }
+
+    public boolean isChunkEmpty(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return true;
+        return this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX).isEmpty();
+    }
+
+    public boolean containsAny(int chunkX, int chunkY, int chunkZ, IntPredicate predicate) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return false;
+        return this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX).containsAny(predicate);
+    }
+
+    public int getBlockCount(int chunkX, int chunkY, int chunkZ, int id) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return 0;
+        return this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX).getBlockCount(id);
+    }
+
+    public int[] getBlockHistogram(int chunkX, int chunkY, int chunkZ) {
+        int[] histogram = new int[Blocks.blocks.length];
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return histogram;
+        this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX).addBlockCounts(histogram);
+        return histogram;
+    }
+
+    public long countBlocks(int id, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, this.width);
+        maxY = Math.min(maxY, this.depth);
+        maxZ = Math.min(maxZ, this.height);
+
+        long count = 0;
+        for (int chunkY = minY >> ChunkSection.SIZE_BITS; chunkY << ChunkSection.SIZE_BITS < maxY; ++chunkY) {
+            for (int chunkZ = minZ >> ChunkSection.SIZE_BITS; chunkZ << ChunkSection.SIZE_BITS < maxZ; ++chunkZ) {
+                for (int chunkX = minX >> ChunkSection.SIZE_BITS; chunkX << ChunkSection.SIZE_BITS < maxX; ++chunkX) {
+                    ChunkSection section = this.peekSection((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX);
+                    int baseX = chunkX << ChunkSection.SIZE_BITS;
+                    int baseY = chunkY << ChunkSection.SIZE_BITS;
+                    int baseZ = chunkZ << ChunkSection.SIZE_BITS;
+                    int fromX = Math.max(minX - baseX, 0);
+                    int fromY = Math.max(minY - baseY, 0);
+                    int fromZ = Math.max(minZ - baseZ, 0);
+                    int toX = Math.min(maxX - baseX, ChunkSection.SIZE);
+                    int toY = Math.min(maxY - baseY, ChunkSection.SIZE);
+                    int toZ = Math.min(maxZ - baseZ, ChunkSection.SIZE);
+
+                    int sectionCount = section.getBlockCount(id);
+                    if (sectionCount == 0) continue;
+                    if (fromX == 0 && fromY == 0 && fromZ == 0 && toX == ChunkSection.SIZE && toY == ChunkSection.SIZE && toZ == ChunkSection.SIZE) {
+                        count += sectionCount;
+                        continue;
+                    }
+
+                    for (int y = fromY; y < toY; ++y) {
+                        for (int z = fromZ; z < toZ; ++z) {
+                            for (int x = fromX; x < toX; ++x) {
+                                if (section.get(x, y, z) == id) {
+                                    ++count;
+                                }
+                            }
+                        }
+                    }
+                }
             }
-            if (localZ == 0) {
-                this.stateListener.onChunkModified(chunkX, chunkY, chunkZ - 1);
-            } else if (localZ == CHUNK_SIZE - 1) {
-                this.stateListener.onChunkModified(chunkX, chunkY, chunkZ + 1);
+        }
+        return count;
+    }
+
+    public long getSectionVersion(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return 0;
+        int stripe = ((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX) & this.lockMask;
+        StampedLock lock = this.sectionLocks[stripe];
+        long stamp = lock.tryOptimisticRead();
+        long version = this.sectionVersions[stripe];
+        if (lock.validate(stamp)) return version;
+
+        stamp = lock.readLock();
+        try {
+            return this.sectionVersions[stripe];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public ChunkSection snapshotSection(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return new ChunkSection();
+        int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+        StampedLock lock = this.getSectionLock(index);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                ChunkSection section = this.copySection(index);
+                if (lock.validate(stamp)) return section;
+            } catch (RuntimeException ignored) {
             }
-            if (localY == 0) {
-                this.stateListener.onChunkModified(chunkX, chunkY - 1, chunkZ);
-            } else if (localY == CHUNK_SIZE - 1) {
-                this.stateListener.onChunkModified(chunkX, chunkY + 1, chunkZ);
+        }
+
+        stamp = lock.readLock();
+        try {
+            return this.copySection(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public BlockRegion snapshotRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        BlockRegion region = new BlockRegion(Math.max(maxX - minX, 0), Math.max(maxZ - minZ, 0), Math.max(maxY - minY, 0));
+        int fromX = Math.max(minX, 0);
+        int fromY = Math.max(minY, 0);
+        int fromZ = Math.max(minZ, 0);
+        int toX = Math.min(maxX, this.width);
+        int toY = Math.min(maxY, this.depth);
+        int toZ = Math.min(maxZ, this.height);
+        if (fromX >= toX || fromY >= toY || fromZ >= toZ) return region;
+
+        IntArrayList indices = new IntArrayList();
+        for (int chunkY = fromY >> ChunkSection.SIZE_BITS; chunkY << ChunkSection.SIZE_BITS < toY; ++chunkY) {
+            for (int chunkZ = fromZ >> ChunkSection.SIZE_BITS; chunkZ << ChunkSection.SIZE_BITS < toZ; ++chunkZ) {
+                for (int chunkX = fromX >> ChunkSection.SIZE_BITS; chunkX << ChunkSection.SIZE_BITS < toX; ++chunkX) {
+                    indices.add((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX);
+                }
             }
         }
+
+        BitSet stripeSet = new BitSet(this.sectionLocks.length);
+        for (int i = 0; i < indices.size(); ++i) {
+            stripeSet.set(indices.getInt(i) & this.lockMask);
+        }
+        int[] stripes = stripeSet.stream().toArray();
+
+        ChunkSection[] sections = new ChunkSection[indices.size()];
+        long[] stamps = new long[stripes.length];
+        boolean valid = true;
+        try {
+            for (int i = 0; i < stripes.length && valid; ++i) {
+                stamps[i] = this.sectionLocks[stripes[i]].tryOptimisticRead();
+                valid = stamps[i] != 0;
+            }
+            for (int i = 0; i < sections.length && valid; ++i) {
+                sections[i] = this.copySection(indices.getInt(i));
+            }
+            for (int i = 0; i < stripes.length && valid; ++i) {
+                valid = this.sectionLocks[stripes[i]].validate(stamps[i]);
+            }
+        } catch (RuntimeException e) {
+            valid = false;
+        }
+
+        if (!valid) {
+            for (int i = 0; i < stripes.length; ++i) {
+                stamps[i] = this.sectionLocks[stripes[i]].readLock();
+            }
+            try {
+                for (int i = 0; i < sections.length; ++i) {
+                    sections[i] = this.copySection(indices.getInt(i));
+                }
+            } finally {
+                for (int i = 0; i < stripes.length; ++i) {
+                    this.sectionLocks[stripes[i]].unlockRead(stamps[i]);
+                }
+            }
+        }
+
+        for (int i = 0; i < sections.length; ++i) {
+            int index = indices.getInt(i);
+            int baseX = (index % this.xChunks) << ChunkSection.SIZE_BITS;
+            int baseY = (index / (this.xChunks * this.zChunks)) << ChunkSection.SIZE_BITS;
+            int baseZ = (index / this.xChunks % this.zChunks) << ChunkSection.SIZE_BITS;
+            for (int y = Math.max(fromY, baseY); y < Math.min(toY, baseY + ChunkSection.SIZE); ++y) {
+                for (int z = Math.max(fromZ, baseZ); z < Math.min(toZ, baseZ + ChunkSection.SIZE); ++z) {
+                    for (int x = Math.max(fromX, baseX); x < Math.min(toX, baseX + ChunkSection.SIZE); ++x) {
+                        region.set(x - minX, y - minY, z - minZ, sections[i].get(x - baseX, y - baseY, z - baseZ));
+                    }
+                }
+            }
+        }
+        return region;
     }
 
-    public boolean isOutOfBounds(int x, int y, int z) {
-        return x < 0 || y < 0 || z < 0 || x >= this.width || y >= this.depth || z >= this.height;
+    private ChunkSection copySection(int index) {
+        ChunkSection section = this.sections[index];
+        if (section != null) return section.copy();
+        section = this.coldSections.peek(index);
+        if (section != null) return section;
+        section = this.evictedSections.get(index);
+        if (section != null) return section.copy();
+        return this.readPersistedSection(index);
+    }
+
+    public boolean isChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return true;
+        return this.isSectionLoaded((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX);
+    }
+
+    private boolean isColumnLoaded(int column) {
+        for (int chunkY = 0; chunkY < this.yChunks; ++chunkY) {
+            if (this.isSectionLoaded(chunkY * this.xChunks * this.zChunks + column)) return true;
+        }
+        return false;
+    }
+
+    private boolean isSectionLoaded(int index) {
+        return this.sections[index] != null || this.coldSections.contains(index);
+    }
+
+    private int getSectionIndex(int x, int y, int z) {
+        return ((y >> ChunkSection.SIZE_BITS) * this.zChunks + (z >> ChunkSection.SIZE_BITS)) * this.xChunks + (x >> ChunkSection.SIZE_BITS);
+    }
+
+    private ChunkSection getSection(int index) {
+        ChunkSection section = this.sections[index];
+        if (section == null) {
+            StampedLock lock = this.getSectionLock(index);
+            long stamp = lock.writeLock();
+            section = this.coldSections.take(index);
+            if (section != null) {
+                this.sections[index] = section;
+            }
+            lock.unlockWrite(stamp);
+            if (section == null) return this.loadSection(index);
+        }
+        if (!this.randomTicking) {
+            section.setLastAccess(this.accessClock);
+        }
+        return section;
+    }
+
+    private ChunkSection peekSection(int index) {
+        ChunkSection section = this.sections[index];
+        if (section != null) return section;
+        section = this.coldSections.peek(index);
+        return section != null ? section : this.readSection(index);
+    }
+
+    private ChunkSection getSection(int x, int y, int z) {
+        return this.getSection(this.getSectionIndex(x, y, z));
+    }
+
+    private StampedLock getSectionLock(int index) {
+        return this.sectionLocks[index & this.lockMask];
+    }
+
+    private void updateTickableCount(int index, int previous, int id) {
+        boolean wasTickable = Blocks.blocks[previous].isTickable();
+        boolean tickable = Blocks.blocks[id].isTickable();
+        if (wasTickable != tickable) {
+            this.setTickableCount(index, this.tickableCounts.get(index) + (tickable ? 1 : -1));
+        }
+    }
+
+    private void setTickableCount(int index, int count) {
+        if (count > 0) {
+            this.tickableCounts.put(index, count);
+        } else {
+            this.tickableCounts.remove(index);
+        }
+        this.setTicking(index, count > 0 && this.sections[index] != null);
+    }
+
+    private void setTicking(int index, boolean ticking) {
+        int slot = this.tickingSlots.get(index);
+        if (ticking && slot < 0) {
+            this.tickingSlots.put(index, this.tickingSections.size());
+            this.tickingSections.add(index);
+        } else if (!ticking && slot >= 0) {
+            int last = this.tickingSections.removeInt(this.tickingSections.size() - 1);
+            if (last != index) {
+                this.tickingSections.set(slot, last);
+                this.tickingSlots.put(last, slot);
+            }
+            this.tickingSlots.remove(index);
+        }
+    }
+
+    public int getTickingSectionCount() {
+        return this.tickingSections.size();
+    }
+
+    public int getTickableCount(int chunkX, int chunkY, int chunkZ) {
+        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return 0;
+        return this.tickableCounts.get((chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX);
+    }
+
+    private void markModified(int index) {
+        this.dirtySections.set(index);
+        this.modifiedSections.set(index);
+        this.snapshotChanges.set(index);
+    }
+
+    private int setBlockIdRaw(int x, int y, int z, int id) {
+        int index = this.getSectionIndex(x, y, z);
+        ChunkSection section = this.getSection(index);
+        StampedLock lock = this.getSectionLock(index);
+        long stamp = lock.writeLock();
+        if (section.isShared()) {
+            section = section.copy();
+            this.sections[index] = section;
+        }
+        int previous = section.get(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+        section.set(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK, id);
+        ++this.sectionVersions[index & this.lockMask];
+        lock.unlockWrite(stamp);
+        this.updateTickableCount(index, previous, id);
+        return previous;
     }
 
     public void setBlockId(int x, int y, int z, int id) {
         if (this.isOutOfBounds(x, y, z)) return;
-        this.blocks[(y * this.height + z) * this.width + x] = (byte) id;
+        int previous = this.setBlockIdRaw(x, y, z, id);
+        this.recordChange(x, y, z, previous, id);
+        this.markModified(this.getSectionIndex(x, y, z));
+        if (this.editLog != null) {
+            this.pendingEdits.add(WriteAheadLog.pack(x, y, z, id));
+        }
         this.notifyChangesOfBlock(x, y, z);
+        if (previous != id) {
+            this.notifyNeighbors(x, y, z, id);
+        }
+    }
+
+    private void notifyNeighbors(int x, int y, int z, int id) {
+        Blocks.blocks[id].onPlaced(this, x, y, z);
+        for (Direction direction : Direction.values()) {
+            int nx = x + direction.normalX;
+            int ny = y + direction.normalY;
+            int nz = z + direction.normalZ;
+            if (this.isOutOfBounds(nx, ny, nz)) continue;
+            Blocks.blocks[this.getBlockId(nx, ny, nz)].neighborChanged(this, nx, ny, nz);
+        }
+    }
+
+    public int fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int id) {
+        return this.editBox(minX, minY, minZ, maxX, maxY, maxZ, -1, id, (x, y, z, current) -> id);
+    }
+
+    public int replaceInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int fromId, int toId) {
+        if (fromId == toId) return 0;
+        return this.editBox(minX, minY, minZ, maxX, maxY, maxZ, fromId, toId, (x, y, z, current) -> current == fromId ? toId : current);
+    }
+
+    public BlockRegion copyRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        BlockRegion region = new BlockRegion(Math.max(maxX - minX, 0), Math.max(maxZ - minZ, 0), Math.max(maxY - minY, 0));
+        for (int y = Math.max(minY, 0); y < Math.min(maxY, this.depth); ++y) {
+            for (int z = Math.max(minZ, 0); z < Math.min(maxZ, this.height); ++z) {
+                for (int x = Math.max(minX, 0); x < Math.min(maxX, this.width); ++x) {
+                    region.set(x - minX, y - minY, z - minZ, this.getSection(x, y, z).get(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK));
+                }
+            }
+        }
+        return region;
+    }
+
+    public int pasteRegion(BlockRegion region, int x, int y, int z) {
+        return this.editBox(x, y, z, x + region.width, y + region.depth, z + region.height, -1, -1, (blockX, blockY, blockZ, current) -> region.get(blockX - x, blockY - y, blockZ - z));
+    }
+
+    private int editBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int matchId, int fillId, BlockEdit edit) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, this.width);
+        maxY = Math.min(maxY, this.depth);
+        maxZ = Math.min(maxZ, this.height);
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) return 0;
+
+        boolean logBox = this.editLog != null && fillId >= 0 && (long) (maxX - minX) * (maxY - minY) * (maxZ - minZ) > BULK_EDIT_LOG_LIMIT;
+        boolean logEdits = this.editLog != null && !logBox;
+        if (this.editHistory != null) {
+            this.editHistory.begin();
+        }
+        int changed = 0;
+        for (int chunkY = minY >> ChunkSection.SIZE_BITS; chunkY << ChunkSection.SIZE_BITS < maxY; ++chunkY) {
+            for (int chunkZ = minZ >> ChunkSection.SIZE_BITS; chunkZ << ChunkSection.SIZE_BITS < maxZ; ++chunkZ) {
+                for (int chunkX = minX >> ChunkSection.SIZE_BITS; chunkX << ChunkSection.SIZE_BITS < maxX; ++chunkX) {
+                    int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+                    ChunkSection section = this.getSection(index);
+                    int baseX = chunkX << ChunkSection.SIZE_BITS;
+                    int baseY = chunkY << ChunkSection.SIZE_BITS;
+                    int baseZ = chunkZ << ChunkSection.SIZE_BITS;
+                    int fromX = Math.max(minX - baseX, 0);
+                    int fromY = Math.max(minY - baseY, 0);
+                    int fromZ = Math.max(minZ - baseZ, 0);
+                    int toX = Math.min(maxX - baseX, ChunkSection.SIZE);
+                    int toY = Math.min(maxY - baseY, ChunkSection.SIZE);
+                    int toZ = Math.min(maxZ - baseZ, ChunkSection.SIZE);
+
+                    if (matchId >= 0 && section.getBlockCount(matchId) == 0) continue;
+
+                    int changedMinX = ChunkSection.SIZE, changedMinY = ChunkSection.SIZE, changedMinZ = ChunkSection.SIZE;
+                    int changedMaxX = -1, changedMaxY = -1, changedMaxZ = -1;
+                    boolean covered = fromX == 0 && fromY == 0 && fromZ == 0 && toX == ChunkSection.SIZE && toY == ChunkSection.SIZE && toZ == ChunkSection.SIZE;
+                    StampedLock lock = this.getSectionLock(index);
+                    long stamp = lock.writeLock();
+                    if (covered && fillId >= 0 && (matchId < 0 || section.getBlockCount(matchId) == ChunkSection.VOLUME)) {
+                        int unchanged = section.getBlockCount(fillId);
+                        if (unchanged < ChunkSection.VOLUME) {
+                            if (this.changeRing.hasConsumers() || this.editHistory != null || this.lightEngine.isColumnReady(chunkX, chunkZ)) {
+                                this.recordFill(section, baseX, baseY, baseZ, fillId);
+                            }
+                            this.sections[index] = new ChunkSection(fillId);
+                            this.sections[index].setLastAccess(this.accessClock);
+                            this.setTickableCount(index, Blocks.blocks[fillId].isTickable() ? ChunkSection.VOLUME : 0);
+                            changed += ChunkSection.VOLUME - unchanged;
+                            changedMinX = changedMinY = changedMinZ = 0;
+                            changedMaxX = changedMaxY = changedMaxZ = ChunkSection.MASK;
+                        }
+                    } else {
+                        for (int y = fromY; y < toY; ++y) {
+                            for (int z = fromZ; z < toZ; ++z) {
+                                for (int x = fromX; x < toX; ++x) {
+                                    int current = section.get(x, y, z);
+                                    int id = edit.apply(baseX + x, baseY + y, baseZ + z, current);
+                                    if (id == current) continue;
+
+                                    if (section.isShared()) {
+                                        section = section.copy();
+                                        this.sections[index] = section;
+                                    }
+                                    section.set(x, y, z, id);
+                                    this.updateTickableCount(index, current, id);
+                                    this.recordChange(baseX + x, baseY + y, baseZ + z, current, id);
+                                    if (logEdits) {
+                                        this.pendingEdits.add(WriteAheadLog.pack(baseX + x, baseY + y, baseZ + z, id));
+                                    }
+                                    ++changed;
+                                    changedMinX = Math.min(changedMinX, x);
+                                    changedMinY = Math.min(changedMinY, y);
+                                    changedMinZ = Math.min(changedMinZ, z);
+                                    changedMaxX = Math.max(changedMaxX, x);
+                                    changedMaxY = Math.max(changedMaxY, y);
+                                    changedMaxZ = Math.max(changedMaxZ, z);
+                                }
+                            }
+                        }
+                    }
+
+                    if (changedMaxX >= 0) {
+                        ++this.sectionVersions[index & this.lockMask];
+                    }
+                    lock.unlockWrite(stamp);
+
+                    if (changedMaxX < 0) continue;
+                    this.markModified(index);
+                    this.pendingChanges.add(baseX + changedMinX, baseY + changedMinY, baseZ + changedMinZ, baseX + changedMaxX, baseY + changedMaxY, baseZ + changedMaxZ);
+                }
+            }
+        }
+
+        if (this.editHistory != null) {
+            this.editHistory.commit();
+        }
+        if (logBox && changed > 0) {
+            this.pendingEdits.addElements(this.pendingEdits.size(), WriteAheadLog.packBox(minX, minY, minZ, maxX, maxY, maxZ, matchId, fillId));
+        }
+        this.finishBulkEdit(changed, minX, minZ, maxX, maxZ);
+        return changed;
+    }
+
+    public int setBlocks(long[] records, int count) {
+        Int2ObjectOpenHashMap<LongArrayList> grouped = new Int2ObjectOpenHashMap<>();
+        IntArrayList touched = new IntArrayList();
+        for (int i = 0; i < count; ++i) {
+            long record = records[i];
+            int x = WriteAheadLog.unpackX(record);
+            int y = WriteAheadLog.unpackY(record);
+            int z = WriteAheadLog.unpackZ(record);
+            if (this.isOutOfBounds(x, y, z)) continue;
+            int index = this.getSectionIndex(x, y, z);
+            LongArrayList group = grouped.get(index);
+            if (group == null) {
+                group = new LongArrayList();
+                grouped.put(index, group);
+                touched.add(index);
+            }
+            group.add(record);
+        }
+        int[] indices = touched.toIntArray();
+        Arrays.sort(indices);
+
+        if (this.editHistory != null) {
+            this.editHistory.begin();
+        }
+        int changed = 0;
+        int minX = this.width, minZ = this.height, maxX = 0, maxZ = 0;
+        for (int index : indices) {
+            LongArrayList group = grouped.get(index);
+            ChunkSection section = this.getSection(index);
+            int changedMinX = this.width, changedMinY = this.depth, changedMinZ = this.height;
+            int changedMaxX = -1, changedMaxY = -1, changedMaxZ = -1;
+            StampedLock lock = this.getSectionLock(index);
+            long stamp = lock.writeLock();
+            for (int i = 0; i < group.size(); ++i) {
+                long record = group.getLong(i);
+                int x = WriteAheadLog.unpackX(record);
+                int y = WriteAheadLog.unpackY(record);
+                int z = WriteAheadLog.unpackZ(record);
+                int id = WriteAheadLog.unpackId(record);
+                int current = section.get(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+                if (id == current) continue;
+
+                if (section.isShared()) {
+                    section = section.copy();
+                    this.sections[index] = section;
+                }
+                section.set(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK, id);
+                this.updateTickableCount(index, current, id);
+                this.recordChange(x, y, z, current, id);
+                if (this.editLog != null) {
+                    this.pendingEdits.add(record);
+                }
+                ++changed;
+                changedMinX = Math.min(changedMinX, x);
+                changedMinY = Math.min(changedMinY, y);
+                changedMinZ = Math.min(changedMinZ, z);
+                changedMaxX = Math.max(changedMaxX, x);
+                changedMaxY = Math.max(changedMaxY, y);
+                changedMaxZ = Math.max(changedMaxZ, z);
+            }
+
+            if (changedMaxX >= 0) {
+                ++this.sectionVersions[index & this.lockMask];
+            }
+            lock.unlockWrite(stamp);
+
+            if (changedMaxX < 0) continue;
+            this.markModified(index);
+            this.pendingChanges.add(changedMinX, changedMinY, changedMinZ, changedMaxX, changedMaxY, changedMaxZ);
+            minX = Math.min(minX, changedMinX);
+            minZ = Math.min(minZ, changedMinZ);
+            maxX = Math.max(maxX, changedMaxX + 1);
+            maxZ = Math.max(maxZ, changedMaxZ + 1);
+        }
+
+        if (this.editHistory != null) {
+            this.editHistory.commit();
+        }
+        this.finishBulkEdit(changed, minX, minZ, maxX, maxZ);
+        return changed;
+    }
+
+    private void finishBulkEdit(int changed, int minX, int minZ, int maxX, int maxZ) {
+        if (changed == 0) return;
+        this.calculateHeightMap(minX, minZ, maxX, maxZ);
+        this.heightmapDirty = true;
+        this.lightEngine.update();
+    }
+
+    private void recordChange(int x, int y, int z, int previous, int id) {
+        this.lightEngine.onBlockChanged(x, y, z, previous, id);
+        if (this.changeRing.hasConsumers()) {
+            this.changeRing.publish(x, y, z, previous, id, this.accessClock);
+        }
+        if (this.editHistory != null && !this.simulating) {
+            this.editHistory.record(x, y, z, previous, id);
+        }
+    }
+
+    private void recordFill(ChunkSection section, int baseX, int baseY, int baseZ, int id) {
+        for (int y = 0; y < ChunkSection.SIZE; ++y) {
+            for (int z = 0; z < ChunkSection.SIZE; ++z) {
+                for (int x = 0; x < ChunkSection.SIZE; ++x) {
+                    int current = section.get(x, y, z);
+                    if (current != id) {
+                        this.recordChange(baseX + x, baseY + y, baseZ + z, current, id);
+                    }
+                }
+            }
+        }
+    }
+
+    public BlockChangeRing getChangeRing() {
+        return this.changeRing;
     }
 
     public int getBlockId(int x, int y, int z) {
         if (this.isOutOfBounds(x, y, z)) return 0;
-        return this.blocks[(y * this.height + z) * this.width + x];
+        return this.getSection(x, y, z).get(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+    }
+
+    public int getHeight(int x, int z) {
+        if (x < 0 || z < 0 || x >= this.width || z >= this.height) return -1;
+        return this.heightmap[z * this.width + x];
     }
 
     public Block getBlock(int x, int y, int z) {
         return Blocks.blocks[this.getBlockId(x, y, z)];
     }
 
+    public LightEngine getLightEngine() {
+        return this.lightEngine;
+    }
+
+    public int getSkyLight(int x, int y, int z) {
+        if (this.isOutOfBounds(x, y, z)) return LightEngine.MAX_LIGHT;
+        return this.lightEngine.getSkyLight(x, y, z);
+    }
+
+    public int getBlockLight(int x, int y, int z) {
+        if (this.isOutOfBounds(x, y, z)) return 0;
+        return this.lightEngine.getBlockLight(x, y, z);
+    }
+
     public boolean isLit(int x, int y, int z) {
-        if (this.isOutOfBounds(x, y, z)) return true;
-        return y >= this.heightmap[x + z * this.width];
+        return this.getSkyLight(x, y, z) == LightEngine.MAX_LIGHT;
     }
 
     public float getBrigthness(int x, int y, int z) {
-        if (this.isOutOfBounds(x, y, z) || this.heightmap[z * this.width + x] <= y) return 1f;
-        return 0.5f;
+        return BRIGHTNESS[Math.max(this.getSkyLight(x, y, z), this.getBlockLight(x, y, z))];
+    }
+
+    private static float[] createBrightnessTable() {
+        float[] brightness = new float[LightEngine.MAX_LIGHT + 1];
+        for (int level = 0; level <= LightEngine.MAX_LIGHT; ++level) {
+            brightness[level] = 0.5f + 0.5f * level / LightEngine.MAX_LIGHT;
+        }
+        return brightness;
     }
 
     public List<Box> getCubes(Box box) {
@@ -358,7 +1779,15 @@ public class World {
         return null;
     }
 
+    private interface BlockEdit {
+        int apply(int x, int y, int z, int id);
+    }
+
     public interface WorldStateListener {
-        void onChunkModified(int chunkX, int chunkY, int chunkZ);
+        void onChunksModified(ChangeSet changes);
+
+        void onChunkLoaded(int chunkX, int chunkY, int chunkZ);
+
+        void onChunkUnloaded(int chunkX, int chunkY, int chunkZ);
     }
 }
@@ -54,10 +54,27 @@ public class Block {
     public void tick(World world, int x, int y, int z, Random random) {
     }
 
+    public void scheduledTick(World world, int x, int y, int z, Random random) {
+    }
+
+    public void onPlaced(World world, int x, int y, int z) {
+    }
+
+    public void neighborChanged(World world, int x, int y, int z) {
+    }
+
     public boolean hasCollision() {
         return true;
     }
 
+    public boolean isOpaque() {
+        return true;
+    }
+
+    public int getLightEmission() {
+        return 0;
+    }
+
     public void onDestroyed(World world, int x, int y, int z, ParticleSystem particleSystem) {
         for (int xx = 0; xx < 4; ++xx) {
             for (int yy = 0; yy < 4; ++yy) {
@@ -10,9 +10,10 @@ public class Blocks {
     public static Block COBBLESTONE;
     public static Block PLANKS;
     public static Block SAPLING;
+    public static Block LAVA;
 
     public static void initialize() {
-        blocks = new Block[7];
+        blocks = new Block[8];
 
         AIR = new Block(0, new int[0]);
         STONE = new Block(1, new int[]{5});
@@ -21,6 +22,7 @@ public class Blocks {
         COBBLESTONE = new Block(4, new int[]{1});
         PLANKS = new Block(5, new int[]{4});
         SAPLING = new SaplingBlock(6, 6);
+        LAVA = new LavaBlock(7, 7);
 
         for (Block block : blocks) {
             if (block.model == null) {
@@ -31,6 +33,7 @@ public class Blocks {
                     case 4 -> Block.Model.load("cobblestone");
                     case 5 -> Block.Model.load("planks");
                     case 6 -> Block.Model.load("sapling");
+                    case 7 -> Block.Model.load("lava");
                     default -> null;
                 };
             }
@@ -0,0 +1,42 @@
+package me.kalmemarq.block;
+
+import me.kalmemarq.World;
+import me.kalmemarq.util.Direction;
+
+import java.util.Random;
+
+public class LavaBlock extends Block {
+    public static final int FLOW_DELAY = 30;
+
+    public LavaBlock(int numericId, int texture) {
+        super(numericId, new int[]{texture});
+    }
+
+    @Override
+    public int getLightEmission() {
+        return 15;
+    }
+
+    @Override
+    public void onPlaced(World world, int x, int y, int z) {
+        world.scheduleTick(x, y, z, FLOW_DELAY);
+    }
+
+    @Override
+    public void neighborChanged(World world, int x, int y, int z) {
+        world.scheduleTick(x, y, z, FLOW_DELAY);
+    }
+
+    @Override
+    public void scheduledTick(World world, int x, int y, int z, Random random) {
+        for (Direction direction : Direction.values()) {
+            if (direction == Direction.UP) continue;
+            int nx = x + direction.normalX;
+            int ny = y + direction.normalY;
+            int nz = z + direction.normalZ;
+            if (!world.isOutOfBounds(nx, ny, nz) && world.getBlockId(nx, ny, nz) == Blocks.AIR.numericId) {
+                world.setBlockId(nx, ny, nz, this.numericId);
+            }
+        }
+    }
+}
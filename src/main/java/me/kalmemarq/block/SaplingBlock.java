@@ -9,4 +9,9 @@ public class SaplingBlock extends Block {
     public boolean hasCollision() {
         return false;
     }
+
+    @Override
+    public boolean isOpaque() {
+        return false;
+    }
 }
@@ -1,5 +1,6 @@
 package me.kalmemarq.render;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import me.kalmemarq.block.Block;
 import me.kalmemarq.block.Blocks;
 import me.kalmemarq.render.vertex.BufferBuilder;
@@ -7,6 +8,8 @@ import me.kalmemarq.render.vertex.VertexBuffer;
 import me.kalmemarq.render.vertex.VertexLayout;
 import me.kalmemarq.util.Box;
 import me.kalmemarq.World;
+import me.kalmemarq.world.ChangeSet;
+import me.kalmemarq.world.ChunkSection;
 import org.lwjgl.system.MemoryUtil;
 
 import java.io.Closeable;
@@ -15,35 +18,77 @@ import java.nio.ByteBuffer;
 public class WorldRenderer implements Closeable, World.WorldStateListener {
     public static int chunksRendererPerFrame = 0;
     public static int currentChunksRendererPerFrame = 0;
+    private static ByteBuffer buffer;
 
-    private final Chunk[] chunks;
+    private final World world;
+    private final Int2ObjectOpenHashMap<Chunk> chunks = new Int2ObjectOpenHashMap<>();
     private final int xChunks;
     private final int yChunks;
     private final int zChunks;
 
     public WorldRenderer(World world) {
+        this.world = world;
         this.xChunks = world.width / World.CHUNK_SIZE;
         this.yChunks = world.depth / World.CHUNK_SIZE;
         this.zChunks = world.height / World.CHUNK_SIZE;
-        this.chunks = new Chunk[this.xChunks * this.yChunks * this.zChunks];
 
         for (int x = 0; x < this.xChunks; x++) {
             for (int y = 0; y < this.yChunks; y++) {
                 for (int z = 0; z < this.zChunks; z++) {
-                    this.chunks[(x + y * this.xChunks) * this.zChunks + z] = new Chunk(world, x, y, z);
+                    if (world.isChunkLoaded(x, y, z)) {
+                        this.onChunkLoaded(x, y, z);
+                    }
                 }
             }
         }
     }
 
     public int getChunkCount() {
-        return this.chunks.length;
+        return this.chunks.size();
+    }
+
+    private boolean isOutOfBounds(int chunkX, int chunkY, int chunkZ) {
+        return chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks;
     }
 
     @Override
-    public void onChunkModified(int chunkX, int chunkY, int chunkZ) {
-        if (chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= this.xChunks || chunkY >= this.yChunks || chunkZ >= this.zChunks) return;
-        this.chunks[(chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ].markDirty();
+    public void onChunksModified(ChangeSet changes) {
+        for (ChangeSet.ChunkChange change : changes.changes()) {
+            this.markDirty(change.chunkX(), change.chunkY(), change.chunkZ());
+            if ((change.minX() & ChunkSection.MASK) == 0) this.markDirty(change.chunkX() - 1, change.chunkY(), change.chunkZ());
+            if ((change.maxX() & ChunkSection.MASK) == ChunkSection.MASK) this.markDirty(change.chunkX() + 1, change.chunkY(), change.chunkZ());
+            if ((change.minY() & ChunkSection.MASK) == 0) this.markDirty(change.chunkX(), change.chunkY() - 1, change.chunkZ());
+            if ((change.maxY() & ChunkSection.MASK) == ChunkSection.MASK) this.markDirty(change.chunkX(), change.chunkY() + 1, change.chunkZ());
+            if ((change.minZ() & ChunkSection.MASK) == 0) this.markDirty(change.chunkX(), change.chunkY(), change.chunkZ() - 1);
+            if ((change.maxZ() & ChunkSection.MASK) == ChunkSection.MASK) this.markDirty(change.chunkX(), change.chunkY(), change.chunkZ() + 1);
+        }
+    }
+
+    private void markDirty(int chunkX, int chunkY, int chunkZ) {
+        if (this.isOutOfBounds(chunkX, chunkY, chunkZ)) return;
+        Chunk chunk = this.chunks.get((chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ);
+        if (chunk != null) {
+            chunk.markDirty();
+        }
+    }
+
+    @Override
+    public void onChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        if (this.isOutOfBounds(chunkX, chunkY, chunkZ)) return;
+        int index = (chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ;
+        if (!this.chunks.containsKey(index)) {
+            this.chunks.put(index, new Chunk(this.world, chunkX, chunkY, chunkZ));
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded(int chunkX, int chunkY, int chunkZ) {
+        if (this.isOutOfBounds(chunkX, chunkY, chunkZ)) return;
+        int index = (chunkX + chunkY * this.xChunks) * this.zChunks + chunkZ;
+        Chunk chunk = this.chunks.remove(index);
+        if (chunk != null) {
+            chunk.close();
+        }
     }
 
     public void render(Shader terrainShader, Frustum frustum, int layer) {
@@ -51,8 +96,8 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
         chunksRendererPerFrame = currentChunksRendererPerFrame;
         currentChunksRendererPerFrame = 0;
 
-        for (Chunk chunk : this.chunks) {
-            if (chunk != null && frustum.isVisible(chunk.box)) {
+        for (Chunk chunk : this.chunks.values()) {
+            if (frustum.isVisible(chunk.box)) {
                 terrainShader.setUniform("uMeshOffset", (float) (chunk.x * World.CHUNK_SIZE), (float) (chunk.y * World.CHUNK_SIZE), (float) (chunk.z * World.CHUNK_SIZE));
                 chunk.render(layer);
                 if (layer == 0) currentChunksRendererPerFrame++;
@@ -62,10 +107,14 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
 
     @Override
     public void close() {
-        for (Chunk chunk : this.chunks) {
-            if (chunk != null) {
-                chunk.close();
-            }
+        for (Chunk chunk : this.chunks.values()) {
+            chunk.close();
+        }
+        this.chunks.clear();
+
+        if (buffer != null) {
+            MemoryUtil.memFree(buffer);
+            buffer = null;
         }
     }
 
@@ -77,9 +126,9 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
         private final int y;
         private final int z;
         private boolean dirty;
+        private boolean hidden;
         private final VertexBuffer[] vertexBuffers;
         public final Box box;
-        private ByteBuffer buffer;
 
         public Chunk(World world, int x, int y, int z) {
             this.world = world;
@@ -95,7 +144,39 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
             this.dirty = true;
         }
 
+        private boolean isHidden() {
+            if (this.world.isChunkEmpty(this.x, this.y, this.z)) return true;
+            if (!this.world.isUniform(this.x, this.y, this.z)) return false;
+
+            Block block = this.world.getBlock(this.x * World.CHUNK_SIZE, this.y * World.CHUNK_SIZE, this.z * World.CHUNK_SIZE);
+            if (block == Blocks.AIR) return true;
+            if (!block.isOpaque()) return false;
+
+            return this.isOpaqueUniform(this.x - 1, this.y, this.z) && this.isOpaqueUniform(this.x + 1, this.y, this.z) &&
+                    this.isOpaqueUniform(this.x, this.y - 1, this.z) && this.isOpaqueUniform(this.x, this.y + 1, this.z) &&
+                    this.isOpaqueUniform(this.x, this.y, this.z - 1) && this.isOpaqueUniform(this.x, this.y, this.z + 1);
+        }
+
+        private boolean isOpaqueUniform(int chunkX, int chunkY, int chunkZ) {
+            if (!this.world.isUniform(chunkX, chunkY, chunkZ)) return false;
+            Block block = this.world.getBlock(chunkX * World.CHUNK_SIZE, chunkY * World.CHUNK_SIZE, chunkZ * World.CHUNK_SIZE);
+            return block != Blocks.AIR && block.isOpaque();
+        }
+
+        private boolean isReady() {
+            return this.world.isChunkLoaded(this.x, this.y, this.z) &&
+                    this.world.isChunkLoaded(this.x - 1, this.y, this.z) && this.world.isChunkLoaded(this.x + 1, this.y, this.z) &&
+                    this.world.isChunkLoaded(this.x, this.y - 1, this.z) && this.world.isChunkLoaded(this.x, this.y + 1, this.z) &&
+                    this.world.isChunkLoaded(this.x, this.y, this.z - 1) && this.world.isChunkLoaded(this.x, this.y, this.z + 1);
+        }
+
         private void rebuild(int layer) {
+            if (this.isHidden()) {
+                this.hidden = true;
+                this.dirty = false;
+                return;
+            }
+
             if (Chunk.rebuiltThisFrame == 2 * 5) return;
             ++Chunk.rebuiltThisFrame;
 
@@ -103,11 +184,11 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
                 this.vertexBuffers[layer] = new VertexBuffer();
             }
 
-            if (this.buffer == null) {
-                this.buffer = MemoryUtil.memAlloc((((12 + 8 + 4) * 4) * 6) * (World.CHUNK_SIZE * World.CHUNK_SIZE * World.CHUNK_SIZE));
+            if (buffer == null) {
+                buffer = MemoryUtil.memAlloc((((12 + 8 + 4) * 4) * 6) * (World.CHUNK_SIZE * World.CHUNK_SIZE * World.CHUNK_SIZE));
             }
 
-            BufferBuilder builder = new BufferBuilder(MemoryUtil.memAddress(this.buffer));
+            BufferBuilder builder = new BufferBuilder(MemoryUtil.memAddress(buffer));
             MatrixStack matrices = new MatrixStack();
             builder.begin();
             for (int y = 0; y < World.CHUNK_SIZE; ++y) {
@@ -128,17 +209,18 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
                 }
             }
 
-            this.vertexBuffers[layer].upload(DrawMode.QUADS, VertexLayout.POS_UV_COLOR, MemoryUtil.memSlice(this.buffer, 0, builder.end() * (12 + 8 + 4)), builder.end());
+            this.vertexBuffers[layer].upload(DrawMode.QUADS, VertexLayout.POS_UV_COLOR, MemoryUtil.memSlice(buffer, 0, builder.end() * (12 + 8 + 4)), builder.end());
+            this.hidden = false;
             this.dirty = false;
         }
 
         public void render(int layer) {
-            if (this.dirty) {
+            if (this.dirty && this.isReady()) {
                 this.rebuild(0);
                 this.rebuild(1);
             }
 
-            if (!this.dirty && this.vertexBuffers[layer].getIndexCount() > 0) {
+            if (!this.dirty && !this.hidden && this.vertexBuffers[layer].getIndexCount() > 0) {
                 this.vertexBuffers[layer].bind();
                 this.vertexBuffers[layer].draw();
             }
@@ -149,10 +231,6 @@ public class WorldRenderer implements Closeable, World.WorldStateListener {
             for (VertexBuffer vertexBuffer : this.vertexBuffers) {
                 if (vertexBuffer != null) vertexBuffer.close();
             }
-
-            if (this.buffer != null) {
-                MemoryUtil.memFree(this.buffer);
-            }
         }
     }
 }
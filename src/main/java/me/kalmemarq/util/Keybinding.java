@@ -14,9 +14,12 @@ public record Keybinding(int... possibleKeys) {
     public static final Keybinding TOGGLE_FULLSCREEN = new Keybinding(GLFW.GLFW_KEY_F11);
     public static final Keybinding TOGGLE_VSYNC = new Keybinding(GLFW.GLFW_KEY_F10);
     public static final Keybinding SAVE_WORLD_TO_DISK = new Keybinding(GLFW.GLFW_KEY_ENTER);
+    public static final Keybinding SNAPSHOT_WORLD = new Keybinding(GLFW.GLFW_KEY_F6);
     public static final Keybinding GO_TO_RANDOM_POS = new Keybinding(GLFW.GLFW_KEY_R);
     public static final Keybinding FLY = new Keybinding(GLFW.GLFW_KEY_J);
     public static final Keybinding NO_CLIP = new Keybinding(GLFW.GLFW_KEY_N);
+    public static final Keybinding UNDO = new Keybinding(GLFW.GLFW_KEY_Z);
+    public static final Keybinding REDO = new Keybinding(GLFW.GLFW_KEY_Y);
 
     public boolean isPressed(Window window) {
         for (int key : this.possibleKeys) {
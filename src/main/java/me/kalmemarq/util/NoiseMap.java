@@ -3,8 +3,18 @@ package me.kalmemarq.util;
 import java.util.Random;
 
 public class NoiseMap {
+    private final Random random;
+
+    public NoiseMap() {
+        this(new Random());
+    }
+
+    public NoiseMap(Random random) {
+        this.random = random;
+    }
+
     public int[] read(int width, int height, int levels) {
-        Random random = new Random();
+        Random random = this.random;
         int[] tmp = new int[width * height];
         int fuzz = 16;
         int step = width >> levels;
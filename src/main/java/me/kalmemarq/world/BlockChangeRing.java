@@ -0,0 +1,126 @@
+package me.kalmemarq.world;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+public class BlockChangeRing {
+    private static final VarHandle RECORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle CURSOR;
+    private static final VarHandle CONSUMERS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CURSOR = lookup.findVarHandle(BlockChangeRing.class, "cursor", long.class);
+            CONSUMERS = lookup.findVarHandle(BlockChangeRing.class, "consumers", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long[] records;
+    private final int capacity;
+    private final int mask;
+    private long cursor;
+    private int consumers;
+
+    public BlockChangeRing(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.records = new long[capacity * 2];
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getCursor() {
+        return (long) CURSOR.getAcquire(this);
+    }
+
+    public boolean hasConsumers() {
+        return (int) CONSUMERS.getOpaque(this) > 0;
+    }
+
+    public void publish(int x, int y, int z, int oldId, int newId, long tick) {
+        long sequence = (long) CURSOR.get(this);
+        int slot = (int) (sequence & this.mask) * 2;
+        VarHandle.storeStoreFence();
+        RECORDS.setOpaque(this.records, slot, WriteAheadLog.pack(x, y, z, newId));
+        RECORDS.setOpaque(this.records, slot + 1, (tick << 8) | (oldId & 0xFF));
+        CURSOR.setRelease(this, sequence + 1);
+    }
+
+    public Consumer subscribe(int batchSize) {
+        return new Consumer(Math.clamp(batchSize, 1, this.capacity));
+    }
+
+    public interface Handler {
+        void onBlockChange(int x, int y, int z, int oldId, int newId, long tick);
+    }
+
+    public class Consumer implements AutoCloseable {
+        private final long[] batch;
+        private long position;
+        private long dropped;
+        private boolean closed;
+
+        private Consumer(int batchSize) {
+            this.batch = new long[batchSize * 2];
+            this.position = BlockChangeRing.this.getCursor();
+            CONSUMERS.getAndAdd(BlockChangeRing.this, 1);
+        }
+
+        public long getPosition() {
+            return this.position;
+        }
+
+        public long getDropped() {
+            return this.dropped;
+        }
+
+        public long getLag() {
+            return BlockChangeRing.this.getCursor() - this.position;
+        }
+
+        public int poll(Handler handler) {
+            long published = BlockChangeRing.this.getCursor();
+            long oldest = published - BlockChangeRing.this.capacity + 1;
+            if (this.position < oldest) {
+                this.dropped += oldest - this.position;
+                this.position = oldest;
+            }
+
+            int count = (int) Math.min(published - this.position, this.batch.length / 2);
+            for (int i = 0; i < count; ++i) {
+                int slot = (int) ((this.position + i) & BlockChangeRing.this.mask) * 2;
+                this.batch[i * 2] = (long) RECORDS.getOpaque(BlockChangeRing.this.records, slot);
+                this.batch[i * 2 + 1] = (long) RECORDS.getOpaque(BlockChangeRing.this.records, slot + 1);
+            }
+
+            VarHandle.acquireFence();
+            long oldestIntact = BlockChangeRing.this.getCursor() - BlockChangeRing.this.capacity + 1;
+            int overwritten = Math.clamp(oldestIntact - this.position, 0, count);
+            this.dropped += overwritten;
+
+            for (int i = overwritten; i < count; ++i) {
+                long record = this.batch[i * 2];
+                long extra = this.batch[i * 2 + 1];
+                handler.onBlockChange(WriteAheadLog.unpackX(record), WriteAheadLog.unpackY(record), WriteAheadLog.unpackZ(record), (int) extra & 0xFF, WriteAheadLog.unpackId(record), extra >>> 8);
+            }
+            this.position += count;
+            return count - overwritten;
+        }
+
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                CONSUMERS.getAndAdd(BlockChangeRing.this, -1);
+            }
+        }
+    }
+}
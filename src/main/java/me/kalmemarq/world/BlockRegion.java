@@ -0,0 +1,30 @@
+package me.kalmemarq.world;
+
+public class BlockRegion {
+    public final int width;
+    public final int height;
+    public final int depth;
+    private final byte[] blocks;
+
+    public BlockRegion(int width, int height, int depth) {
+        if (width < 0 || height < 0 || depth < 0) {
+            throw new IllegalArgumentException("Invalid region size " + width + "x" + height + "x" + depth);
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.blocks = new byte[width * height * depth];
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * this.height + z) * this.width + x;
+    }
+
+    public int get(int x, int y, int z) {
+        return this.blocks[this.index(x, y, z)] & 0xFF;
+    }
+
+    public void set(int x, int y, int z, int id) {
+        this.blocks[this.index(x, y, z)] = (byte) id;
+    }
+}
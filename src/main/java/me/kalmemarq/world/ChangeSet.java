@@ -0,0 +1,66 @@
+package me.kalmemarq.world;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public record ChangeSet(long tick, List<ChunkChange> changes) {
+    public boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    public record ChunkChange(int chunkX, int chunkY, int chunkZ, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    }
+
+    public static class Builder {
+        private final int xChunks;
+        private final int zChunks;
+        private final IntArrayList chunks = new IntArrayList();
+        private final Int2ObjectOpenHashMap<int[]> bounds = new Int2ObjectOpenHashMap<>();
+
+        public Builder(int xChunks, int zChunks) {
+            this.xChunks = xChunks;
+            this.zChunks = zChunks;
+        }
+
+        public boolean isEmpty() {
+            return this.chunks.isEmpty();
+        }
+
+        public void add(int x, int y, int z) {
+            this.add(x, y, z, x, y, z);
+        }
+
+        public void add(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            int index = ((minY >> ChunkSection.SIZE_BITS) * this.zChunks + (minZ >> ChunkSection.SIZE_BITS)) * this.xChunks + (minX >> ChunkSection.SIZE_BITS);
+            int[] bounds = this.bounds.get(index);
+            if (bounds == null) {
+                this.bounds.put(index, new int[]{minX, minY, minZ, maxX, maxY, maxZ});
+                this.chunks.add(index);
+            } else {
+                bounds[0] = Math.min(bounds[0], minX);
+                bounds[1] = Math.min(bounds[1], minY);
+                bounds[2] = Math.min(bounds[2], minZ);
+                bounds[3] = Math.max(bounds[3], maxX);
+                bounds[4] = Math.max(bounds[4], maxY);
+                bounds[5] = Math.max(bounds[5], maxZ);
+            }
+        }
+
+        public ChangeSet build(long tick) {
+            List<ChunkChange> changes = new ArrayList<>(this.chunks.size());
+            for (int i = 0; i < this.chunks.size(); ++i) {
+                int index = this.chunks.getInt(i);
+                int[] bounds = this.bounds.get(index);
+                changes.add(new ChunkChange(index % this.xChunks, index / (this.xChunks * this.zChunks), index / this.xChunks % this.zChunks,
+                        bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]));
+            }
+            this.chunks.clear();
+            this.bounds.clear();
+            return new ChangeSet(tick, Collections.unmodifiableList(changes));
+        }
+    }
+}
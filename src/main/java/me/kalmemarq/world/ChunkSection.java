@@ -0,0 +1,321 @@
+package me.kalmemarq.world;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+public class ChunkSection {
+    public static final int SIZE_BITS = 5;
+    public static final int SIZE = 1 << SIZE_BITS;
+    public static final int MASK = SIZE - 1;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+    private static final int MAX_BITS = 8;
+    private static final long[] UNIFORM_DATA = new long[1];
+
+    private int[] palette;
+    private int[] counts;
+    private int paletteSize;
+    private int bits;
+    private long[] data;
+    private boolean shared;
+    private int lastAccess;
+
+    public ChunkSection() {
+        this(0);
+    }
+
+    public ChunkSection(int fillId) {
+        this.palette = new int[1];
+        this.palette[0] = fillId;
+        this.counts = new int[1];
+        this.counts[0] = VOLUME;
+        this.paletteSize = 1;
+        this.bits = 0;
+        this.data = UNIFORM_DATA;
+    }
+
+    public static ChunkSection read(DataInput input) throws IOException {
+        int bits = input.readUnsignedByte();
+        if (bits != 0 && bits != 1 && bits != 2 && bits != 4 && bits != MAX_BITS) {
+            throw new IOException("Invalid bits per entry " + bits);
+        }
+
+        int paletteSize = input.readUnsignedShort();
+        if (paletteSize < 1 || paletteSize > 1 << bits) {
+            throw new IOException("Invalid palette size " + paletteSize);
+        }
+
+        ChunkSection section = new ChunkSection();
+        section.bits = bits;
+        section.paletteSize = paletteSize;
+        section.palette = new int[1 << bits];
+        section.counts = new int[1 << bits];
+        for (int i = 0; i < paletteSize; ++i) {
+            section.palette[i] = input.readUnsignedShort();
+        }
+
+        if (bits > 0) {
+            section.data = new long[VOLUME * bits / 64];
+            for (int i = 0; i < section.data.length; ++i) {
+                section.data[i] = input.readLong();
+            }
+            for (int i = 0; i < VOLUME; ++i) {
+                ++section.counts[section.getPaletteIndex(i)];
+            }
+        } else {
+            section.counts[0] = VOLUME;
+        }
+
+        return section;
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(this.bits);
+        output.writeShort(this.paletteSize);
+        for (int i = 0; i < this.paletteSize; ++i) {
+            output.writeShort(this.palette[i]);
+        }
+
+        if (this.bits > 0) {
+            for (long word : this.data) {
+                output.writeLong(word);
+            }
+        }
+    }
+
+    public static int index(int x, int y, int z) {
+        return (((y << SIZE_BITS) | z) << SIZE_BITS) | x;
+    }
+
+    public int get(int x, int y, int z) {
+        return this.get(index(x, y, z));
+    }
+
+    public int get(int index) {
+        int bitIndex = index * this.bits;
+        long word = this.data[bitIndex >>> 6];
+        return this.palette[(int) (word >>> (bitIndex & 63)) & ((1 << this.bits) - 1)];
+    }
+
+    public void set(int x, int y, int z, int id) {
+        this.set(index(x, y, z), id);
+    }
+
+    public void set(int index, int id) {
+        int paletteIndex = this.indexOf(id);
+        if (paletteIndex < 0) {
+            paletteIndex = this.addToPalette(id);
+        }
+
+        int previous = this.getPaletteIndex(index);
+        if (previous == paletteIndex) return;
+        --this.counts[previous];
+        ++this.counts[paletteIndex];
+        this.setPaletteIndex(index, paletteIndex);
+    }
+
+    public int getBlockCount(int id) {
+        int paletteIndex = this.indexOf(id);
+        return paletteIndex < 0 ? 0 : this.counts[paletteIndex];
+    }
+
+    public int getNonAirCount() {
+        return VOLUME - this.getBlockCount(0);
+    }
+
+    public boolean isEmpty() {
+        return this.getBlockCount(0) == VOLUME;
+    }
+
+    public void addBlockCounts(int[] histogram) {
+        for (int i = 0; i < this.paletteSize; ++i) {
+            histogram[this.palette[i]] += this.counts[i];
+        }
+    }
+
+    public boolean containsAny(IntPredicate predicate) {
+        for (int i = 0; i < this.paletteSize; ++i) {
+            if (this.counts[i] > 0 && predicate.test(this.palette[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int countMatching(IntPredicate predicate) {
+        int count = 0;
+        for (int i = 0; i < this.paletteSize; ++i) {
+            if (this.counts[i] > 0 && predicate.test(this.palette[i])) {
+                count += this.counts[i];
+            }
+        }
+        return count;
+    }
+
+    public int scanHeights(short[] heights, int baseY, int unresolved) {
+        int airIndex = this.indexOf(0);
+        if (airIndex >= 0 && this.counts[airIndex] == VOLUME) return unresolved;
+        if (airIndex < 0 || this.counts[airIndex] == 0) {
+            for (int i = 0; i < SIZE * SIZE; ++i) {
+                if (heights[i] < 0) {
+                    heights[i] = (short) (baseY + MASK);
+                }
+            }
+            return 0;
+        }
+
+        int entriesPerWord = 64 / this.bits;
+        int wordsPerLayer = SIZE * SIZE / entriesPerWord;
+        long lowBits = Long.divideUnsigned(-1L, (1L << this.bits) - 1);
+        long airPattern = lowBits * airIndex;
+        for (int y = MASK; y >= 0 && unresolved > 0; --y) {
+            int start = y * wordsPerLayer;
+            for (int word = 0; word < wordsPerLayer; ++word) {
+                long diff = this.data[start + word] ^ airPattern;
+                for (int shift = 1; shift < this.bits; shift <<= 1) {
+                    diff |= diff >>> shift;
+                }
+                long solid = diff & lowBits;
+                while (solid != 0) {
+                    int column = word * entriesPerWord + Long.numberOfTrailingZeros(solid) / this.bits;
+                    if (heights[column] < 0) {
+                        heights[column] = (short) (baseY + y);
+                        --unresolved;
+                    }
+                    solid &= solid - 1;
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    public ChunkSection copy() {
+        ChunkSection copy = new ChunkSection();
+        copy.palette = this.palette.clone();
+        copy.counts = this.counts.clone();
+        copy.paletteSize = this.paletteSize;
+        copy.bits = this.bits;
+        copy.data = this.bits == 0 ? UNIFORM_DATA : this.data.clone();
+        copy.lastAccess = this.lastAccess;
+        return copy;
+    }
+
+    public int getLastAccess() {
+        return this.lastAccess;
+    }
+
+    public void setLastAccess(int tick) {
+        this.lastAccess = tick;
+    }
+
+    public void markShared() {
+        this.shared = true;
+    }
+
+    public boolean isShared() {
+        return this.shared;
+    }
+
+    public boolean isUniform() {
+        return this.bits == 0;
+    }
+
+    public void trim() {
+        if (this.bits == 0) return;
+        this.compact();
+        if (this.paletteSize == 1) {
+            this.bits = 0;
+            this.data = UNIFORM_DATA;
+        }
+    }
+
+    public int getPaletteSize() {
+        return this.paletteSize;
+    }
+
+    public int getBitsPerEntry() {
+        return this.bits;
+    }
+
+    private int getPaletteIndex(int index) {
+        int bitIndex = index * this.bits;
+        return (int) (this.data[bitIndex >>> 6] >>> (bitIndex & 63)) & ((1 << this.bits) - 1);
+    }
+
+    private void setPaletteIndex(int index, int paletteIndex) {
+        if (this.bits == 0) return;
+        int bitIndex = index * this.bits;
+        int shift = bitIndex & 63;
+        long mask = ((1L << this.bits) - 1) << shift;
+        int word = bitIndex >>> 6;
+        this.data[word] = (this.data[word] & ~mask) | (((long) paletteIndex << shift) & mask);
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < this.paletteSize; ++i) {
+            if (this.palette[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addToPalette(int id) {
+        if (this.paletteSize == 1 << this.bits) {
+            this.compact();
+        }
+
+        if (this.paletteSize == 1 << this.bits) {
+            this.resize(this.bits == 0 ? 1 : Math.min(this.bits * 2, MAX_BITS));
+        }
+
+        if (this.paletteSize == this.palette.length) {
+            this.palette = Arrays.copyOf(this.palette, 1 << this.bits);
+            this.counts = Arrays.copyOf(this.counts, 1 << this.bits);
+        }
+
+        this.palette[this.paletteSize] = id;
+        return this.paletteSize++;
+    }
+
+    private void compact() {
+        if (this.bits == 0) return;
+        int[] remap = new int[this.paletteSize];
+        int[] newPalette = new int[this.palette.length];
+        int[] newCounts = new int[this.palette.length];
+        int newPaletteSize = 0;
+
+        for (int i = 0; i < this.paletteSize; ++i) {
+            if (this.counts[i] > 0) {
+                newPalette[newPaletteSize] = this.palette[i];
+                newCounts[newPaletteSize] = this.counts[i];
+                remap[i] = newPaletteSize++;
+            }
+        }
+
+        if (newPaletteSize == this.paletteSize) return;
+
+        for (int i = 0; i < VOLUME; ++i) {
+            this.setPaletteIndex(i, remap[this.getPaletteIndex(i)]);
+        }
+
+        this.palette = newPalette;
+        this.counts = newCounts;
+        this.paletteSize = newPaletteSize;
+    }
+
+    private void resize(int newBits) {
+        ChunkSection resized = new ChunkSection();
+        resized.bits = newBits;
+        resized.data = new long[VOLUME * newBits / 64];
+
+        for (int i = 0; i < VOLUME; ++i) {
+            resized.setPaletteIndex(i, this.getPaletteIndex(i));
+        }
+
+        this.bits = newBits;
+        this.data = resized.data;
+    }
+}
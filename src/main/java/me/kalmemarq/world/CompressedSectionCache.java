@@ -0,0 +1,122 @@
+package me.kalmemarq.world;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class CompressedSectionCache implements Closeable {
+    private final Int2ObjectOpenHashMap<Entry> entries = new Int2ObjectOpenHashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final byte[] chunk = new byte[8192];
+    private long hits;
+    private long misses;
+    private long bytesSaved;
+
+    public synchronized boolean contains(int index) {
+        return this.entries.containsKey(index);
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized boolean put(int index, ChunkSection section) {
+        this.output.reset();
+        try {
+            section.write(new DataOutputStream(this.output));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] raw = this.output.toByteArray();
+
+        this.output.reset();
+        this.deflater.reset();
+        this.deflater.setInput(raw);
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            this.output.write(this.chunk, 0, this.deflater.deflate(this.chunk));
+        }
+
+        if (this.output.size() >= raw.length) return false;
+
+        Entry previous = this.entries.put(index, new Entry(this.output.toByteArray(), raw.length));
+        if (previous != null) {
+            this.bytesSaved -= previous.rawLength - previous.data.length;
+        }
+        this.bytesSaved += raw.length - this.output.size();
+        return true;
+    }
+
+    public synchronized ChunkSection take(int index) {
+        Entry entry = this.entries.remove(index);
+        if (entry == null) {
+            ++this.misses;
+            return null;
+        }
+
+        ++this.hits;
+        this.bytesSaved -= entry.rawLength - entry.data.length;
+        return this.decode(index, entry);
+    }
+
+    public synchronized ChunkSection peek(int index) {
+        Entry entry = this.entries.get(index);
+        return entry != null ? this.decode(index, entry) : null;
+    }
+
+    private ChunkSection decode(int index, Entry entry) {
+        byte[] raw = new byte[entry.rawLength];
+        this.inflater.reset();
+        this.inflater.setInput(entry.data);
+        try {
+            int length = 0;
+            while (length < raw.length && !this.inflater.finished()) {
+                length += this.inflater.inflate(raw, length, raw.length - length);
+            }
+            return ChunkSection.read(new DataInputStream(new ByteArrayInputStream(raw, 0, length)));
+        } catch (DataFormatException | IOException e) {
+            throw new IllegalStateException("Corrupted compressed section " + index, e);
+        }
+    }
+
+    public synchronized boolean remove(int index) {
+        Entry entry = this.entries.remove(index);
+        if (entry == null) return false;
+        this.bytesSaved -= entry.rawLength - entry.data.length;
+        return true;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getBytesSaved() {
+        return this.bytesSaved;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.entries.clear();
+        this.bytesSaved = 0;
+        this.deflater.end();
+        this.inflater.end();
+    }
+
+    private record Entry(byte[] data, int rawLength) {
+    }
+}
@@ -0,0 +1,206 @@
+package me.kalmemarq.world;
+
+import me.kalmemarq.World;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+public class EditHistory {
+    private static final int TRANSACTION_OVERHEAD = 48;
+    private final long memoryLimit;
+    private final Deque<Transaction> undoStack = new ArrayDeque<>();
+    private final Deque<Transaction> redoStack = new ArrayDeque<>();
+    private Transaction current;
+    private int depth;
+    private boolean applying;
+    private long memoryUsage;
+    private long evictedCount;
+
+    public EditHistory(long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("Memory limit must be positive, got " + memoryLimit);
+        }
+        this.memoryLimit = memoryLimit;
+    }
+
+    public void begin() {
+        if (this.depth++ == 0) {
+            this.current = new Transaction();
+        }
+    }
+
+    public void commit() {
+        if (this.depth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (--this.depth > 0) return;
+
+        Transaction transaction = this.current;
+        this.current = null;
+        if (transaction.count == 0) return;
+
+        transaction.trim();
+        for (Transaction redo : this.redoStack) {
+            this.memoryUsage -= redo.getMemoryUsage();
+        }
+        this.redoStack.clear();
+        this.undoStack.push(transaction);
+        this.memoryUsage += transaction.getMemoryUsage();
+
+        while (this.memoryUsage > this.memoryLimit && !this.undoStack.isEmpty()) {
+            this.memoryUsage -= this.undoStack.removeLast().getMemoryUsage();
+            ++this.evictedCount;
+        }
+    }
+
+    public void record(int x, int y, int z, int oldId, int newId) {
+        if (this.applying || oldId == newId) return;
+        if (this.depth == 0) {
+            this.begin();
+            this.current.add(x, y, z, oldId, newId);
+            this.commit();
+        } else {
+            this.current.add(x, y, z, oldId, newId);
+        }
+    }
+
+    public boolean canUndo() {
+        return !this.undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !this.redoStack.isEmpty();
+    }
+
+    public int undo(World world) {
+        Transaction transaction = this.pop(this.undoStack);
+        if (transaction == null) return 0;
+        this.redoStack.push(transaction);
+        return this.apply(world, transaction.decode(true));
+    }
+
+    public int redo(World world) {
+        Transaction transaction = this.pop(this.redoStack);
+        if (transaction == null) return 0;
+        this.undoStack.push(transaction);
+        return this.apply(world, transaction.decode(false));
+    }
+
+    private Transaction pop(Deque<Transaction> stack) {
+        if (this.depth > 0) {
+            throw new IllegalStateException("Cannot undo or redo while a transaction is in progress");
+        }
+        return stack.poll();
+    }
+
+    private int apply(World world, long[] records) {
+        this.applying = true;
+        try {
+            return world.setBlocks(records, records.length);
+        } finally {
+            this.applying = false;
+        }
+    }
+
+    public int getUndoCount() {
+        return this.undoStack.size();
+    }
+
+    public int getRedoCount() {
+        return this.redoStack.size();
+    }
+
+    public long getMemoryUsage() {
+        return this.memoryUsage;
+    }
+
+    public long getMemoryLimit() {
+        return this.memoryLimit;
+    }
+
+    public long getEvictedCount() {
+        return this.evictedCount;
+    }
+
+    public void clear() {
+        this.undoStack.clear();
+        this.redoStack.clear();
+        this.memoryUsage = 0;
+    }
+
+    private static class Transaction {
+        private byte[] data = new byte[64];
+        private int length;
+        private int count;
+        private int lastX;
+        private int lastY;
+        private int lastZ;
+        private int position;
+
+        public void add(int x, int y, int z, int oldId, int newId) {
+            if (this.length + 17 > this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            this.writeVarInt(x - this.lastX);
+            this.writeVarInt(y - this.lastY);
+            this.writeVarInt(z - this.lastZ);
+            this.data[this.length++] = (byte) oldId;
+            this.data[this.length++] = (byte) newId;
+            this.lastX = x;
+            this.lastY = y;
+            this.lastZ = z;
+            ++this.count;
+        }
+
+        public long[] decode(boolean undo) {
+            long[] records = new long[this.count];
+            this.position = 0;
+            int x = 0;
+            int y = 0;
+            int z = 0;
+            for (int i = 0; i < this.count; ++i) {
+                x += this.readVarInt();
+                y += this.readVarInt();
+                z += this.readVarInt();
+                int oldId = this.data[this.position++] & 0xFF;
+                int newId = this.data[this.position++] & 0xFF;
+                if (undo) {
+                    records[this.count - 1 - i] = WriteAheadLog.pack(x, y, z, oldId);
+                } else {
+                    records[i] = WriteAheadLog.pack(x, y, z, newId);
+                }
+            }
+            return records;
+        }
+
+        public void trim() {
+            this.data = Arrays.copyOf(this.data, this.length);
+        }
+
+        public long getMemoryUsage() {
+            return this.data.length + TRANSACTION_OVERHEAD;
+        }
+
+        private void writeVarInt(int value) {
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                this.data[this.length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            this.data[this.length++] = (byte) zigzag;
+        }
+
+        private int readVarInt() {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.data[this.position++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
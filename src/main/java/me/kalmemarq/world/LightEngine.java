@@ -0,0 +1,380 @@
+package me.kalmemarq.world;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import me.kalmemarq.World;
+import me.kalmemarq.block.Blocks;
+import me.kalmemarq.util.Direction;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+public class LightEngine {
+    public static final int MAX_LIGHT = 15;
+    private static final int BLOCK_LIGHT_BUDGET = 1 << 14;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final IntPredicate EMISSIVE_BLOCKS = id -> getEmission(id) > 0;
+    private final World world;
+    private final ChangeSet.Builder changes;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int xChunks;
+    private final int yChunks;
+    private final int zChunks;
+    private final Channel skyLight;
+    private final Channel blockLight;
+    private final BitSet readyColumns = new BitSet();
+    private int initializingColumn = -1;
+    private long relitVoxels;
+
+    public LightEngine(World world, ChangeSet.Builder changes) {
+        this.world = world;
+        this.changes = changes;
+        this.width = world.width;
+        this.height = world.height;
+        this.depth = world.depth;
+        this.xChunks = (this.width + ChunkSection.SIZE - 1) >> ChunkSection.SIZE_BITS;
+        this.yChunks = (this.depth + ChunkSection.SIZE - 1) >> ChunkSection.SIZE_BITS;
+        this.zChunks = (this.height + ChunkSection.SIZE - 1) >> ChunkSection.SIZE_BITS;
+        this.skyLight = new Channel(true);
+        this.blockLight = new Channel(false);
+    }
+
+    public int getSkyLight(int x, int y, int z) {
+        this.ensureColumn(x >> ChunkSection.SIZE_BITS, z >> ChunkSection.SIZE_BITS);
+        return this.get(this.skyLight, x, y, z);
+    }
+
+    public int getBlockLight(int x, int y, int z) {
+        this.ensureColumn(x >> ChunkSection.SIZE_BITS, z >> ChunkSection.SIZE_BITS);
+        return this.get(this.blockLight, x, y, z);
+    }
+
+    public boolean isColumnReady(int chunkX, int chunkZ) {
+        return this.readyColumns.get(chunkZ * this.xChunks + chunkX);
+    }
+
+    public void unloadColumn(int chunkX, int chunkZ) {
+        int column = chunkZ * this.xChunks + chunkX;
+        if (!this.readyColumns.get(column)) return;
+        this.readyColumns.clear(column);
+        for (int chunkY = 0; chunkY < this.yChunks; ++chunkY) {
+            int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+            this.skyLight.light.remove(index);
+            this.blockLight.light.remove(index);
+        }
+    }
+
+    public boolean hasPendingBlockLight() {
+        return !this.blockLight.removalQueue.isEmpty() || !this.blockLight.lightQueue.isEmpty();
+    }
+
+    public void onBlockChanged(int x, int y, int z, int oldId, int newId) {
+        if (!this.isReady(x, z)) return;
+        boolean wasOpaque = isOpaque(oldId);
+        boolean opaque = isOpaque(newId);
+
+        if (wasOpaque != opaque) {
+            if (opaque) {
+                this.removeAt(this.skyLight, x, y, z);
+            } else {
+                if (y == this.depth - 1) {
+                    this.set(this.skyLight, x, y, z, MAX_LIGHT);
+                    this.skyLight.lightQueue.add(this.encode(x, y, z));
+                }
+                this.enqueueNeighbors(this.skyLight, x, y, z);
+            }
+        }
+
+        int emission = getEmission(newId);
+        if (this.get(this.blockLight, x, y, z) > emission && (opaque || getEmission(oldId) > 0)) {
+            this.removeAt(this.blockLight, x, y, z);
+        }
+        if (emission > this.get(this.blockLight, x, y, z)) {
+            this.set(this.blockLight, x, y, z, emission);
+            this.blockLight.lightQueue.add(this.encode(x, y, z));
+        }
+        if (wasOpaque && !opaque) {
+            this.enqueueNeighbors(this.blockLight, x, y, z);
+        }
+    }
+
+    public void update() {
+        this.removeLight(this.skyLight, Integer.MAX_VALUE);
+        this.propagateLight(this.skyLight, Integer.MAX_VALUE);
+    }
+
+    public int tick() {
+        int processed = this.removeLight(this.blockLight, BLOCK_LIGHT_BUDGET);
+        if (this.blockLight.removalQueue.isEmpty()) {
+            processed += this.propagateLight(this.blockLight, BLOCK_LIGHT_BUDGET - processed);
+        }
+        return processed;
+    }
+
+    public long getRelitVoxels() {
+        return this.relitVoxels;
+    }
+
+    private void removeAt(Channel channel, int x, int y, int z) {
+        int level = this.get(channel, x, y, z);
+        if (level == 0) return;
+        this.set(channel, x, y, z, 0);
+        channel.removalQueue.add(WriteAheadLog.pack(x, y, z, level));
+    }
+
+    private void enqueueNeighbors(Channel channel, int x, int y, int z) {
+        for (Direction direction : DIRECTIONS) {
+            int nx = x + direction.normalX;
+            int ny = y + direction.normalY;
+            int nz = z + direction.normalZ;
+            if (this.isOutOfBounds(nx, ny, nz) || !this.isReady(nx, nz)) continue;
+            if (this.get(channel, nx, ny, nz) > 0) {
+                channel.lightQueue.add(this.encode(nx, ny, nz));
+            }
+        }
+    }
+
+    private void ensureColumn(int chunkX, int chunkZ) {
+        int column = chunkZ * this.xChunks + chunkX;
+        if (this.readyColumns.get(column)) return;
+        this.readyColumns.set(column);
+        this.initializingColumn = column;
+
+        int baseX = chunkX << ChunkSection.SIZE_BITS;
+        int baseZ = chunkZ << ChunkSection.SIZE_BITS;
+        int sizeX = Math.min(ChunkSection.SIZE, this.width - baseX);
+        int sizeZ = Math.min(ChunkSection.SIZE, this.height - baseZ);
+        short[] skyBottom = new short[ChunkSection.SIZE * ChunkSection.SIZE];
+        Arrays.fill(skyBottom, (short) -1);
+        int open = sizeX * sizeZ;
+        LongQueue skySeeds = new LongQueue();
+        LongQueue blockSeeds = new LongQueue();
+
+        for (int chunkY = this.yChunks - 1; chunkY >= 0; --chunkY) {
+            int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+            int baseY = chunkY << ChunkSection.SIZE_BITS;
+            this.blockLight.light.put(index, new NibbleArray(0));
+            if (this.world.containsAny(chunkX, chunkY, chunkZ, EMISSIVE_BLOCKS)) {
+                this.seedEmitters(index, baseX, baseY, baseZ, blockSeeds);
+            }
+
+            if (open == sizeX * sizeZ && this.world.isChunkEmpty(chunkX, chunkY, chunkZ)) {
+                this.skyLight.light.put(index, new NibbleArray(MAX_LIGHT));
+                continue;
+            }
+
+            NibbleArray skyLight = new NibbleArray(0);
+            this.skyLight.light.put(index, skyLight);
+            for (int z = 0; z < sizeZ && open > 0; ++z) {
+                for (int x = 0; x < sizeX; ++x) {
+                    if (skyBottom[(z << ChunkSection.SIZE_BITS) | x] >= 0) continue;
+                    int y = Math.min(ChunkSection.MASK, this.depth - 1 - baseY);
+                    for (; y >= 0; --y) {
+                        if (isOpaque(this.world.getBlockId(baseX + x, baseY + y, baseZ + z))) break;
+                        skyLight.set(ChunkSection.index(x, y, z), MAX_LIGHT);
+                    }
+                    if (y >= 0) {
+                        skyBottom[(z << ChunkSection.SIZE_BITS) | x] = (short) (baseY + y + 1);
+                        --open;
+                    }
+                }
+            }
+        }
+
+        for (int z = 0; z < sizeZ; ++z) {
+            for (int x = 0; x < sizeX; ++x) {
+                int bottom = Math.max(skyBottom[(z << ChunkSection.SIZE_BITS) | x], 0);
+                int top = bottom;
+                for (int i = 2; i < DIRECTIONS.length; ++i) {
+                    int nx = x + DIRECTIONS[i].normalX;
+                    int nz = z + DIRECTIONS[i].normalZ;
+                    if (nx >= 0 && nz >= 0 && nx < sizeX && nz < sizeZ) {
+                        top = Math.max(top, skyBottom[(nz << ChunkSection.SIZE_BITS) | nx]);
+                    } else if (!this.isOutOfBounds(baseX + nx, 0, baseZ + nz) && this.isReady(baseX + nx, baseZ + nz)) {
+                        top = this.depth;
+                        this.seedBorder(this.skyLight, skySeeds, baseX + nx, baseZ + nz);
+                        this.seedBorder(this.blockLight, blockSeeds, baseX + nx, baseZ + nz);
+                    }
+                }
+                for (int y = bottom; y < top; ++y) {
+                    skySeeds.add(this.encode(baseX + x, y, baseZ + z));
+                }
+            }
+        }
+
+        this.propagateLight(this.skyLight, skySeeds, Integer.MAX_VALUE);
+        this.propagateLight(this.blockLight, blockSeeds, Integer.MAX_VALUE);
+        this.initializingColumn = -1;
+    }
+
+    private void seedEmitters(int index, int baseX, int baseY, int baseZ, LongQueue queue) {
+        NibbleArray light = this.blockLight.light.get(index);
+        for (int y = 0; y < ChunkSection.SIZE && baseY + y < this.depth; ++y) {
+            for (int z = 0; z < ChunkSection.SIZE && baseZ + z < this.height; ++z) {
+                for (int x = 0; x < ChunkSection.SIZE && baseX + x < this.width; ++x) {
+                    int emission = getEmission(this.world.getBlockId(baseX + x, baseY + y, baseZ + z));
+                    if (emission > 0) {
+                        light.set(ChunkSection.index(x, y, z), emission);
+                        queue.add(this.encode(baseX + x, baseY + y, baseZ + z));
+                    }
+                }
+            }
+        }
+    }
+
+    private void seedBorder(Channel channel, LongQueue queue, int x, int z) {
+        for (int y = 0; y < this.depth; ++y) {
+            if (this.get(channel, x, y, z) > 1) {
+                queue.add(this.encode(x, y, z));
+            }
+        }
+    }
+
+    private int removeLight(Channel channel, int budget) {
+        int processed = 0;
+        while (processed < budget && !channel.removalQueue.isEmpty()) {
+            ++processed;
+            long voxel = channel.removalQueue.remove();
+            int level = WriteAheadLog.unpackId(voxel);
+            int x = WriteAheadLog.unpackX(voxel);
+            int y = WriteAheadLog.unpackY(voxel);
+            int z = WriteAheadLog.unpackZ(voxel);
+            for (Direction direction : DIRECTIONS) {
+                int nx = x + direction.normalX;
+                int ny = y + direction.normalY;
+                int nz = z + direction.normalZ;
+                if (this.isOutOfBounds(nx, ny, nz) || !this.isReady(nx, nz)) continue;
+
+                int neighbor = this.get(channel, nx, ny, nz);
+                if (neighbor == 0) continue;
+                if (neighbor < level || (channel.sky && direction == Direction.DOWN && level == MAX_LIGHT && neighbor == MAX_LIGHT)) {
+                    this.set(channel, nx, ny, nz, 0);
+                    channel.removalQueue.add(WriteAheadLog.pack(nx, ny, nz, neighbor));
+                    if (!channel.sky) {
+                        int emission = getEmission(this.world.getBlockId(nx, ny, nz));
+                        if (emission > 0) {
+                            this.set(channel, nx, ny, nz, emission);
+                            channel.lightQueue.add(this.encode(nx, ny, nz));
+                        }
+                    }
+                } else {
+                    channel.lightQueue.add(this.encode(nx, ny, nz));
+                }
+            }
+        }
+        return processed;
+    }
+
+    private int propagateLight(Channel channel, int budget) {
+        return this.propagateLight(channel, channel.lightQueue, budget);
+    }
+
+    private int propagateLight(Channel channel, LongQueue queue, int budget) {
+        int processed = 0;
+        while (processed < budget && !queue.isEmpty()) {
+            ++processed;
+            long voxel = queue.remove();
+            int x = WriteAheadLog.unpackX(voxel);
+            int y = WriteAheadLog.unpackY(voxel);
+            int z = WriteAheadLog.unpackZ(voxel);
+            int level = this.get(channel, x, y, z);
+            if (level <= 1) continue;
+
+            for (Direction direction : DIRECTIONS) {
+                int nx = x + direction.normalX;
+                int ny = y + direction.normalY;
+                int nz = z + direction.normalZ;
+                if (this.isOutOfBounds(nx, ny, nz) || !this.isReady(nx, nz)) continue;
+
+                int next = channel.sky && direction == Direction.DOWN && level == MAX_LIGHT ? MAX_LIGHT : level - 1;
+                if (this.get(channel, nx, ny, nz) >= next || isOpaque(this.world.getBlockId(nx, ny, nz))) continue;
+                this.set(channel, nx, ny, nz, next);
+                queue.add(this.encode(nx, ny, nz));
+            }
+        }
+        return processed;
+    }
+
+    private static boolean isOpaque(int id) {
+        return id != 0 && Blocks.blocks[id].isOpaque();
+    }
+
+    private static int getEmission(int id) {
+        return Blocks.blocks[id].getLightEmission();
+    }
+
+    private boolean isOutOfBounds(int x, int y, int z) {
+        return x < 0 || y < 0 || z < 0 || x >= this.width || y >= this.depth || z >= this.height;
+    }
+
+    private boolean isReady(int x, int z) {
+        return this.readyColumns.get((z >> ChunkSection.SIZE_BITS) * this.xChunks + (x >> ChunkSection.SIZE_BITS));
+    }
+
+    private long encode(int x, int y, int z) {
+        return WriteAheadLog.pack(x, y, z, 0);
+    }
+
+    private int getSectionIndex(int x, int y, int z) {
+        return ((y >> ChunkSection.SIZE_BITS) * this.zChunks + (z >> ChunkSection.SIZE_BITS)) * this.xChunks + (x >> ChunkSection.SIZE_BITS);
+    }
+
+    private int get(Channel channel, int x, int y, int z) {
+        NibbleArray light = channel.light.get(this.getSectionIndex(x, y, z));
+        if (light == null) return 0;
+        return light.get(ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK));
+    }
+
+    private void set(Channel channel, int x, int y, int z, int level) {
+        channel.light.get(this.getSectionIndex(x, y, z)).set(ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK), level);
+        if ((z >> ChunkSection.SIZE_BITS) * this.xChunks + (x >> ChunkSection.SIZE_BITS) != this.initializingColumn) {
+            ++this.relitVoxels;
+            if (this.changes != null) {
+                this.changes.add(x, y, z);
+            }
+        }
+    }
+
+    private static class Channel {
+        private final Int2ObjectOpenHashMap<NibbleArray> light = new Int2ObjectOpenHashMap<>();
+        private final boolean sky;
+        private final LongQueue removalQueue = new LongQueue();
+        private final LongQueue lightQueue = new LongQueue();
+
+        public Channel(boolean sky) {
+            this.sky = sky;
+        }
+    }
+
+    private static class LongQueue {
+        private long[] elements = new long[1024];
+        private int head;
+        private int tail;
+
+        public boolean isEmpty() {
+            return this.head == this.tail;
+        }
+
+        public void add(long value) {
+            this.elements[this.tail] = value;
+            this.tail = (this.tail + 1) & (this.elements.length - 1);
+            if (this.tail == this.head) {
+                long[] grown = new long[this.elements.length * 2];
+                int split = this.elements.length - this.head;
+                System.arraycopy(this.elements, this.head, grown, 0, split);
+                System.arraycopy(this.elements, 0, grown, split, this.head);
+                this.head = 0;
+                this.tail = this.elements.length;
+                this.elements = grown;
+            }
+        }
+
+        public long remove() {
+            long value = this.elements[this.head];
+            this.head = (this.head + 1) & (this.elements.length - 1);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package me.kalmemarq.world;
+
+import java.util.Arrays;
+
+public class NibbleArray {
+    private byte[] data;
+    private final int fill;
+
+    public NibbleArray(int fill) {
+        this.fill = fill & 15;
+    }
+
+    public int get(int index) {
+        if (this.data == null) return this.fill;
+        return (this.data[index >> 1] >> ((index & 1) << 2)) & 15;
+    }
+
+    public void set(int index, int value) {
+        if (this.data == null) {
+            if (value == this.fill) return;
+            this.data = new byte[ChunkSection.VOLUME / 2];
+            Arrays.fill(this.data, (byte) (this.fill * 17));
+        }
+        int shift = (index & 1) << 2;
+        this.data[index >> 1] = (byte) ((this.data[index >> 1] & ~(15 << shift)) | ((value & 15) << shift));
+    }
+
+    public boolean isUniform() {
+        return this.data == null;
+    }
+}
@@ -0,0 +1,329 @@
+package me.kalmemarq.world;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class RegionFile implements Closeable {
+    private static final int MAGIC = 0x43303039;
+    private static final int VERSION = 3;
+    private static final int LEGACY_HEADER_SIZE = 6 * 4;
+    private static final int HEADER_SIZE = 7 * 4;
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 4;
+    private static final int SECTOR_SIZE = 512;
+
+    private final FileChannel channel;
+    public final int width;
+    public final int height;
+    public final int depth;
+    private final SaveCodec codec;
+    private final int chunkCount;
+    private final int tableOffset;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] capacities;
+    private final int[] checksums;
+    private final BitSet pendingEntries = new BitSet();
+    private final TreeMap<Long, Long> freeSectors = new TreeMap<>();
+    private final TreeMap<Long, Long> releasedSectors = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long end;
+
+    private RegionFile(FileChannel channel, int width, int height, int depth, SaveCodec codec, int chunkCount, int entryCount, int tableOffset) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.codec = codec;
+        this.chunkCount = chunkCount;
+        this.tableOffset = tableOffset;
+        this.offsets = new long[entryCount];
+        this.lengths = new int[entryCount];
+        this.capacities = new int[entryCount];
+        this.checksums = new int[entryCount];
+        this.end = tableOffset + (long) entryCount * ENTRY_SIZE;
+    }
+
+    public static boolean isRegionFile(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            return channel.read(buffer, 0) == 4 && buffer.getInt(0) == MAGIC;
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    public static RegionFile create(Path path, int width, int height, int depth, int chunkCount, SaveCodec codec) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        RegionFile region = new RegionFile(channel, width, height, depth, codec, chunkCount, chunkCount + 1, HEADER_SIZE);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) region.end);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(depth).putInt(chunkCount).putInt(codec.id());
+            header.position(0);
+            region.writeFully(header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return region;
+    }
+
+    public static RegionFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(LEGACY_HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException("Not a region file: " + path);
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported region file version " + version);
+
+            int width = header.getInt();
+            int height = header.getInt();
+            int depth = header.getInt();
+            int chunkCount = header.getInt();
+            SaveCodec codec = SaveCodec.DEFLATE;
+            int tableOffset = LEGACY_HEADER_SIZE;
+            if (version >= 3) {
+                ByteBuffer codecId = ByteBuffer.allocate(4);
+                readFully(channel, codecId, LEGACY_HEADER_SIZE);
+                codec = SaveCodec.byId(codecId.getInt(0));
+                tableOffset = HEADER_SIZE;
+            }
+
+            RegionFile region = new RegionFile(channel, width, height, depth, codec, chunkCount, version == 1 ? chunkCount : chunkCount + 1, tableOffset);
+            ByteBuffer table = ByteBuffer.allocate(region.offsets.length * ENTRY_SIZE);
+            readFully(channel, table, tableOffset);
+            table.flip();
+
+            TreeMap<Long, Long> used = new TreeMap<>();
+            for (int i = 0; i < region.offsets.length; ++i) {
+                region.offsets[i] = table.getLong();
+                region.lengths[i] = table.getInt();
+                region.capacities[i] = table.getInt();
+                region.checksums[i] = table.getInt();
+                if (region.capacities[i] > 0) {
+                    used.put(region.offsets[i], (long) region.capacities[i]);
+                }
+            }
+
+            for (Map.Entry<Long, Long> extent : used.entrySet()) {
+                if (extent.getKey() > region.end) {
+                    region.freeSectors.put(region.end, extent.getKey() - region.end);
+                }
+                region.end = Math.max(region.end, extent.getKey() + extent.getValue());
+            }
+
+            return region;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public SaveCodec getCodec() {
+        return this.codec;
+    }
+
+    public int getChunkCount() {
+        return this.chunkCount;
+    }
+
+    public boolean hasChunk(int index) {
+        return this.lengths[index] > 0;
+    }
+
+    public boolean hasMetadata() {
+        return this.offsets.length > this.chunkCount && this.lengths[this.chunkCount] > 0;
+    }
+
+    public byte[] readChunk(int index) throws IOException {
+        Objects.checkIndex(index, this.chunkCount);
+        return this.readEntry(index);
+    }
+
+    public byte[] readEncodedChunk(int index) throws IOException {
+        Objects.checkIndex(index, this.chunkCount);
+        return this.readEncodedEntry(index);
+    }
+
+    public void writeChunk(int index, byte[] data) throws IOException {
+        Objects.checkIndex(index, this.chunkCount);
+        this.writeEncodedEntry(index, this.codec.encode(data));
+    }
+
+    public void writeEncodedChunk(int index, byte[] compressed) throws IOException {
+        Objects.checkIndex(index, this.chunkCount);
+        this.writeEncodedEntry(index, compressed);
+    }
+
+    public byte[] encode(byte[] data) throws IOException {
+        return this.codec.encode(data);
+    }
+
+    public byte[] readMetadata() throws IOException {
+        return this.offsets.length > this.chunkCount ? this.readEntry(this.chunkCount) : null;
+    }
+
+    public void writeMetadata(byte[] data) throws IOException {
+        if (this.offsets.length == this.chunkCount) throw new IOException("Region file has no metadata entry");
+        this.writeEncodedEntry(this.chunkCount, this.codec.encode(data));
+    }
+
+    private byte[] readEntry(int index) throws IOException {
+        byte[] compressed = this.readEncodedEntry(index);
+        return compressed != null ? this.codec.decode(compressed) : null;
+    }
+
+    private byte[] readEncodedEntry(int index) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            if (this.lengths[index] == 0) return null;
+
+            long offset = this.offsets[index];
+            byte[] compressed = new byte[this.lengths[index]];
+            readFully(this.channel, ByteBuffer.wrap(compressed), offset);
+
+            CRC32 crc = new CRC32();
+            crc.update(compressed);
+            if ((int) crc.getValue() != this.checksums[index]) {
+                throw new IOException("Checksum mismatch in entry " + index);
+            }
+            return compressed;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void writeEncodedEntry(int index, byte[] compressed) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        int capacity = (compressed.length + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE;
+
+        long offset;
+        this.lock.writeLock().lock();
+        try {
+            offset = this.allocate(capacity);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        this.writeFully(ByteBuffer.wrap(compressed), offset);
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.capacities[index] > 0) {
+                this.releasedSectors.put(this.offsets[index], (long) this.capacities[index]);
+            }
+            this.offsets[index] = offset;
+            this.lengths[index] = compressed.length;
+            this.capacities[index] = capacity;
+            this.checksums[index] = (int) crc.getValue();
+            this.pendingEntries.set(index);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private long allocate(long capacity) {
+        for (Map.Entry<Long, Long> extent : this.freeSectors.entrySet()) {
+            long offset = extent.getKey();
+            long size = extent.getValue();
+            if (size < capacity) continue;
+
+            this.freeSectors.remove(offset);
+            if (size > capacity) {
+                this.freeSectors.put(offset + capacity, size - capacity);
+            }
+            return offset;
+        }
+
+        long offset = this.end;
+        this.end += capacity;
+        return offset;
+    }
+
+    private void release(long offset, long capacity) {
+        Map.Entry<Long, Long> before = this.freeSectors.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            this.freeSectors.remove(before.getKey());
+            offset = before.getKey();
+            capacity += before.getValue();
+        }
+
+        Long after = this.freeSectors.remove(offset + capacity);
+        if (after != null) {
+            capacity += after;
+        }
+
+        if (offset + capacity == this.end) {
+            this.end = offset;
+        } else {
+            this.freeSectors.put(offset, capacity);
+        }
+    }
+
+    public void flush() throws IOException {
+        this.channel.force(false);
+        if (this.pendingEntries.isEmpty()) return;
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        for (int i = this.pendingEntries.nextSetBit(0); i >= 0; i = this.pendingEntries.nextSetBit(i + 1)) {
+            entry.clear();
+            entry.putLong(this.offsets[i]).putInt(this.lengths[i]).putInt(this.capacities[i]).putInt(this.checksums[i]);
+            entry.flip();
+            this.writeFully(entry, this.tableOffset + (long) i * ENTRY_SIZE);
+        }
+        this.pendingEntries.clear();
+        this.channel.force(false);
+
+        this.lock.writeLock().lock();
+        try {
+            for (Map.Entry<Long, Long> extent : this.releasedSectors.entrySet()) {
+                this.release(extent.getKey(), extent.getValue());
+            }
+            this.releasedSectors.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!this.pendingEntries.isEmpty()) {
+                this.flush();
+            }
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package me.kalmemarq.world;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public interface SaveCodec {
+    SaveCodec RAW = new Raw();
+    SaveCodec LZ = new Lz();
+    SaveCodec DEFLATE_FAST = deflate(Deflater.BEST_SPEED);
+    SaveCodec DEFLATE = deflate(6);
+    SaveCodec DEFLATE_BEST = deflate(Deflater.BEST_COMPRESSION);
+    SaveCodec DEFAULT = DEFLATE_FAST;
+
+    int id();
+
+    String name();
+
+    byte[] encode(byte[] data) throws IOException;
+
+    byte[] decode(byte[] data) throws IOException;
+
+    static SaveCodec deflate(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level " + level);
+        }
+        return new Deflate(level);
+    }
+
+    static SaveCodec byId(int id) throws IOException {
+        if (id == RAW.id()) return RAW;
+        if (id == LZ.id()) return LZ;
+        if (id >= Deflate.BASE_ID && id <= Deflate.BASE_ID + Deflater.BEST_COMPRESSION) return deflate(id - Deflate.BASE_ID);
+        throw new IOException("Unknown save codec " + id);
+    }
+
+    static List<SaveCodec> values() {
+        List<SaveCodec> codecs = new ArrayList<>();
+        codecs.add(RAW);
+        codecs.add(LZ);
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; ++level) {
+            codecs.add(deflate(level));
+        }
+        return codecs;
+    }
+
+    record Raw() implements SaveCodec {
+        @Override
+        public int id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "raw";
+        }
+
+        @Override
+        public byte[] encode(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decode(byte[] data) {
+            return data;
+        }
+    }
+
+    record Deflate(int level) implements SaveCodec {
+        private static final int BASE_ID = 16;
+
+        @Override
+        public int id() {
+            return BASE_ID + this.level;
+        }
+
+        @Override
+        public String name() {
+            return "deflate-" + this.level;
+        }
+
+        @Override
+        public byte[] encode(byte[] data) {
+            Deflater deflater = new Deflater(this.level);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                byte[] output = new byte[data.length / 2 + 64];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                return Arrays.copyOf(output, length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] data) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] output = new byte[data.length * 4 + 64];
+                int length = 0;
+                while (!inflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    int inflated = inflater.inflate(output, length, output.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate stream");
+                    }
+                    length += inflated;
+                }
+                return Arrays.copyOf(output, length);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    record Lz() implements SaveCodec {
+        private static final int MIN_MATCH = 4;
+        private static final int MAX_OFFSET = 0xFFFF;
+        private static final int HASH_BITS = 12;
+
+        @Override
+        public int id() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "lz";
+        }
+
+        @Override
+        public byte[] encode(byte[] data) {
+            byte[] output = new byte[4 + data.length + data.length / 255 + 16];
+            writeIntLE(output, 0, data.length);
+            int length = 4;
+
+            int[] table = new int[1 << HASH_BITS];
+            Arrays.fill(table, -1);
+            int anchor = 0;
+            int position = 0;
+
+            while (position + MIN_MATCH <= data.length) {
+                int sequence = readIntLE(data, position);
+                int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+                int reference = table[hash];
+                table[hash] = position;
+
+                if (reference < 0 || position - reference > MAX_OFFSET || readIntLE(data, reference) != sequence) {
+                    ++position;
+                    continue;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < data.length && data[reference + matchLength] == data[position + matchLength]) {
+                    ++matchLength;
+                }
+
+                length = writeSequence(output, length, data, anchor, position - anchor, position - reference, matchLength);
+                position += matchLength;
+                anchor = position;
+            }
+
+            length = writeSequence(output, length, data, anchor, data.length - anchor, 0, 0);
+            return Arrays.copyOf(output, length);
+        }
+
+        private static int writeSequence(byte[] output, int length, byte[] data, int literalStart, int literalLength, int offset, int matchLength) {
+            int extraMatch = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+            output[length++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(extraMatch, 15));
+            if (literalLength >= 15) {
+                length = writeLength(output, length, literalLength - 15);
+            }
+
+            System.arraycopy(data, literalStart, output, length, literalLength);
+            length += literalLength;
+
+            if (matchLength > 0) {
+                output[length++] = (byte) offset;
+                output[length++] = (byte) (offset >>> 8);
+                if (extraMatch >= 15) {
+                    length = writeLength(output, length, extraMatch - 15);
+                }
+            }
+            return length;
+        }
+
+        private static int writeLength(byte[] output, int length, int value) {
+            while (value >= 255) {
+                output[length++] = (byte) 255;
+                value -= 255;
+            }
+            output[length++] = (byte) value;
+            return length;
+        }
+
+        @Override
+        public byte[] decode(byte[] data) throws IOException {
+            if (data.length < 4) throw new IOException("Truncated lz stream");
+            int decodedLength = readIntLE(data, 0);
+            if (decodedLength < 0) throw new IOException("Invalid lz length " + decodedLength);
+
+            byte[] output = new byte[decodedLength];
+            int length = 0;
+            int position = 4;
+
+            try {
+                while (position < data.length) {
+                    int token = data[position++] & 0xFF;
+                    int literalLength = token >>> 4;
+                    if (literalLength == 15) {
+                        int b;
+                        do {
+                            b = data[position++] & 0xFF;
+                            literalLength += b;
+                        } while (b == 255);
+                    }
+
+                    System.arraycopy(data, position, output, length, literalLength);
+                    position += literalLength;
+                    length += literalLength;
+                    if (position == data.length) break;
+
+                    int offset = (data[position++] & 0xFF) | (data[position++] & 0xFF) << 8;
+                    int matchLength = (token & 15) + MIN_MATCH;
+                    if ((token & 15) == 15) {
+                        int b;
+                        do {
+                            b = data[position++] & 0xFF;
+                            matchLength += b;
+                        } while (b == 255);
+                    }
+
+                    if (offset == 0 || offset > length) throw new IOException("Invalid lz match offset " + offset);
+                    if (offset >= matchLength) {
+                        System.arraycopy(output, length - offset, output, length, matchLength);
+                        length += matchLength;
+                    } else {
+                        for (int i = 0; i < matchLength; ++i, ++length) {
+                            output[length] = output[length - offset];
+                        }
+                    }
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupted lz stream", e);
+            }
+
+            if (length != decodedLength) throw new IOException("Corrupted lz stream, expected " + decodedLength + " bytes but got " + length);
+            return output;
+        }
+
+        private static int readIntLE(byte[] data, int offset) {
+            return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+        }
+
+        private static void writeIntLE(byte[] data, int offset, int value) {
+            data[offset] = (byte) value;
+            data[offset + 1] = (byte) (value >>> 8);
+            data[offset + 2] = (byte) (value >>> 16);
+            data[offset + 3] = (byte) (value >>> 24);
+        }
+    }
+}
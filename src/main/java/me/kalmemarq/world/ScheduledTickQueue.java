@@ -0,0 +1,203 @@
+package me.kalmemarq.world;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.LongConsumer;
+
+public class ScheduledTickQueue {
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private final int xChunks;
+    private final int zChunks;
+    private final Long2LongOpenHashMap scheduled = new Long2LongOpenHashMap();
+    private final Bucket[] near = new Bucket[WHEEL_SIZE];
+    private final Bucket[] far = new Bucket[WHEEL_SIZE];
+    private final Bucket overflow = new Bucket();
+    private Bucket backlog = new Bucket();
+    private long currentTick;
+    private long version;
+    private volatile long savedVersion;
+
+    public ScheduledTickQueue(int xChunks, int zChunks) {
+        this.xChunks = xChunks;
+        this.zChunks = zChunks;
+        for (int i = 0; i < WHEEL_SIZE; ++i) {
+            this.near[i] = new Bucket();
+            this.far[i] = new Bucket();
+        }
+        this.scheduled.defaultReturnValue(-1L);
+    }
+
+    public boolean schedule(int x, int y, int z, int delay) {
+        long position = WriteAheadLog.pack(x, y, z, 0);
+        long due = this.currentTick + Math.max(delay, 1);
+        if (this.scheduled.putIfAbsent(position, due) != -1L) return false;
+        this.place(position, due);
+        ++this.version;
+        return true;
+    }
+
+    public boolean isScheduled(int x, int y, int z) {
+        return this.scheduled.containsKey(WriteAheadLog.pack(x, y, z, 0));
+    }
+
+    public int size() {
+        return this.scheduled.size();
+    }
+
+    public boolean isDirty() {
+        return this.version != this.savedVersion;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public void markSaved(long version) {
+        this.savedVersion = version;
+    }
+
+    public int run(int budget, LongConsumer consumer) {
+        ++this.currentTick;
+        if ((this.currentTick & WHEEL_MASK) == 0) {
+            this.cascade();
+        }
+
+        Bucket pending = this.backlog;
+        this.backlog = new Bucket();
+        int processed = this.drain(pending, budget, consumer);
+        processed += this.drain(this.near[(int) (this.currentTick & WHEEL_MASK)], budget - processed, consumer);
+        if (processed > 0) {
+            ++this.version;
+        }
+        return processed;
+    }
+
+    private int drain(Bucket bucket, int budget, LongConsumer consumer) {
+        int processed = 0;
+        for (int chunk = 0; chunk < bucket.order.size(); ++chunk) {
+            int index = bucket.order.getInt(chunk);
+            LongArrayList positions = bucket.positions.get(index);
+            for (int i = 0; i < positions.size(); ++i) {
+                long position = positions.getLong(i);
+                if (processed >= budget) {
+                    this.backlog.add(index, position);
+                    continue;
+                }
+                this.scheduled.remove(position);
+                consumer.accept(position);
+                ++processed;
+            }
+        }
+        bucket.clear();
+        return processed;
+    }
+
+    private void cascade() {
+        if ((this.currentTick & ((1L << (WHEEL_BITS * 2)) - 1)) == 0) {
+            this.replace(this.overflow);
+        }
+        this.replace(this.far[(int) ((this.currentTick >> WHEEL_BITS) & WHEEL_MASK)]);
+    }
+
+    private void replace(Bucket bucket) {
+        LongArrayList moved = new LongArrayList();
+        for (int chunk = 0; chunk < bucket.order.size(); ++chunk) {
+            LongArrayList positions = bucket.positions.get(bucket.order.getInt(chunk));
+            for (int i = 0; i < positions.size(); ++i) {
+                moved.add(positions.getLong(i));
+            }
+        }
+        bucket.clear();
+        for (int i = 0; i < moved.size(); ++i) {
+            long position = moved.getLong(i);
+            this.place(position, this.scheduled.get(position));
+        }
+    }
+
+    private void place(long position, long due) {
+        Bucket bucket;
+        if (due >> WHEEL_BITS == this.currentTick >> WHEEL_BITS) {
+            bucket = this.near[(int) (due & WHEEL_MASK)];
+        } else if (due >> (WHEEL_BITS * 2) == this.currentTick >> (WHEEL_BITS * 2)) {
+            bucket = this.far[(int) ((due >> WHEEL_BITS) & WHEEL_MASK)];
+        } else {
+            bucket = this.overflow;
+        }
+        bucket.add(this.getChunkIndex(position), position);
+    }
+
+    private int getChunkIndex(long position) {
+        int x = WriteAheadLog.unpackX(position) >> ChunkSection.SIZE_BITS;
+        int y = WriteAheadLog.unpackY(position) >> ChunkSection.SIZE_BITS;
+        int z = WriteAheadLog.unpackZ(position) >> ChunkSection.SIZE_BITS;
+        return (y * this.zChunks + z) * this.xChunks + x;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(4 + this.scheduled.size() * 12);
+        DataOutputStream data = new DataOutputStream(output);
+        try {
+            data.writeInt(this.scheduled.size());
+            for (Long2LongMap.Entry entry : this.scheduled.long2LongEntrySet()) {
+                data.writeLong(entry.getLongKey());
+                data.writeInt((int) Math.min(Math.max(entry.getLongValue() - this.currentTick, 0), Integer.MAX_VALUE));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    public void read(DataInputStream input) throws IOException {
+        this.clear();
+        int count = input.readInt();
+        for (int i = 0; i < count; ++i) {
+            long position = input.readLong();
+            int delay = input.readInt();
+            this.schedule(WriteAheadLog.unpackX(position), WriteAheadLog.unpackY(position), WriteAheadLog.unpackZ(position), delay);
+        }
+        this.savedVersion = this.version;
+    }
+
+    public void clear() {
+        this.scheduled.clear();
+        for (int i = 0; i < WHEEL_SIZE; ++i) {
+            this.near[i].clear();
+            this.far[i].clear();
+        }
+        this.overflow.clear();
+        this.backlog.clear();
+        ++this.version;
+    }
+
+    private static class Bucket {
+        private final Int2ObjectOpenHashMap<LongArrayList> positions = new Int2ObjectOpenHashMap<>();
+        private final IntArrayList order = new IntArrayList();
+
+        public void add(int chunk, long position) {
+            LongArrayList positions = this.positions.get(chunk);
+            if (positions == null) {
+                positions = new LongArrayList();
+                this.positions.put(chunk, positions);
+                this.order.add(chunk);
+            }
+            positions.add(position);
+        }
+
+        public void clear() {
+            this.positions.clear();
+            this.order.clear();
+        }
+    }
+}
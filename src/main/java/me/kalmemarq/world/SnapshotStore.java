@@ -0,0 +1,234 @@
+package me.kalmemarq.world;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class SnapshotStore {
+    private static final int MAGIC = 0x43303953;
+    private static final int VERSION = 2;
+    private static final int HASH_SIZE = 32;
+    private static final String MANIFEST_EXTENSION = ".manifest";
+    private static final int SEQUENCE_DIGITS = 8;
+    private static final DateTimeFormatter NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS");
+
+    private final Path root;
+    private final Path objects;
+    private final Set<String> knownObjects = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicInteger objectsWritten = new AtomicInteger();
+
+    public SnapshotStore(Path root) {
+        this.root = root;
+        this.objects = root.resolve("objects");
+    }
+
+    public Path getRoot() {
+        return this.root;
+    }
+
+    public List<Path> listManifests() throws IOException {
+        if (!Files.isDirectory(this.root)) return List.of();
+        try (Stream<Path> files = Files.list(this.root)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(MANIFEST_EXTENSION)).sorted(Comparator.comparingLong(SnapshotStore::getSequence).thenComparing(Path::getFileName)).toList();
+        }
+    }
+
+    public byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] putObject(byte[] data) throws IOException {
+        byte[] hash = this.hash(data);
+        String name = HexFormat.of().formatHex(hash);
+        if (this.knownObjects.contains(name)) return hash;
+
+        Path path = this.getObjectPath(name);
+        if (!Files.exists(path)) {
+            Files.createDirectories(path.getParent());
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 16);
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(output)) {
+                deflater.write(data);
+            }
+
+            Path tempPath = Files.createTempFile(path.getParent(), name, ".tmp");
+            Files.write(tempPath, output.toByteArray());
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.bytesWritten.addAndGet(output.size());
+            this.objectsWritten.incrementAndGet();
+        }
+
+        this.knownObjects.add(name);
+        return hash;
+    }
+
+    public byte[] getObject(byte[] hash) throws IOException {
+        String name = HexFormat.of().formatHex(hash);
+        byte[] data;
+        try (InputStream input = new InflaterInputStream(Files.newInputStream(this.getObjectPath(name)))) {
+            data = input.readAllBytes();
+        }
+
+        if (!Arrays.equals(this.hash(data), hash)) {
+            throw new IOException("Corrupted snapshot object " + name);
+        }
+        return data;
+    }
+
+    private Path getObjectPath(String name) {
+        return this.objects.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    public Path writeManifest(int width, int height, int depth, SaveCodec codec, byte[][] chunkHashes, byte[] metadataHash) throws IOException {
+        Map<String, Integer> uniqueIndices = new HashMap<>();
+        List<byte[]> uniqueHashes = new ArrayList<>();
+        int[] indices = new int[chunkHashes.length];
+        for (int i = 0; i < chunkHashes.length; ++i) {
+            if (chunkHashes[i] == null) {
+                indices[i] = -1;
+                continue;
+            }
+
+            byte[] hash = chunkHashes[i];
+            indices[i] = uniqueIndices.computeIfAbsent(HexFormat.of().formatHex(hash), key -> {
+                uniqueHashes.add(hash);
+                return uniqueHashes.size() - 1;
+            });
+        }
+
+        Files.createDirectories(this.root);
+        Path path = this.reserveManifestPath();
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(tempPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(width);
+                output.writeInt(height);
+                output.writeInt(depth);
+                output.writeInt(codec.id());
+                output.writeInt(chunkHashes.length);
+                output.writeBoolean(metadataHash != null);
+                if (metadataHash != null) {
+                    output.write(metadataHash);
+                }
+
+                output.writeInt(uniqueHashes.size());
+                for (byte[] hash : uniqueHashes) {
+                    output.write(hash);
+                }
+                for (int index : indices) {
+                    output.writeInt(index);
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return path;
+    }
+
+    private synchronized Path reserveManifestPath() throws IOException {
+        long sequence = 0;
+        for (Path manifest : this.listManifests()) {
+            sequence = Math.max(sequence, getSequence(manifest));
+        }
+
+        while (true) {
+            Path path = this.root.resolve(String.format("%0" + SEQUENCE_DIGITS + "d_%s%s", ++sequence, NAME_FORMATTER.format(LocalDateTime.now()), MANIFEST_EXTENSION));
+            try {
+                return Files.createFile(path);
+            } catch (FileAlreadyExistsException ignored) {
+            }
+        }
+    }
+
+    private static long getSequence(Path manifest) {
+        String name = manifest.getFileName().toString();
+        if (name.length() <= SEQUENCE_DIGITS || name.charAt(SEQUENCE_DIGITS) != '_') return 0;
+        try {
+            return Long.parseLong(name.substring(0, SEQUENCE_DIGITS));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void restore(Path manifest, Path target) throws IOException {
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(Files.newInputStream(manifest)))) {
+            if (input.readInt() != MAGIC) throw new IOException("Not a snapshot manifest: " + manifest);
+            int version = input.readInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported snapshot manifest version " + version);
+
+            int width = input.readInt();
+            int height = input.readInt();
+            int depth = input.readInt();
+            SaveCodec codec = version >= 2 ? SaveCodec.byId(input.readInt()) : SaveCodec.DEFAULT;
+            int chunkCount = input.readInt();
+            byte[] metadataHash = null;
+            if (input.readBoolean()) {
+                metadataHash = new byte[HASH_SIZE];
+                input.readFully(metadataHash);
+            }
+
+            byte[][] uniqueHashes = new byte[input.readInt()][HASH_SIZE];
+            for (byte[] hash : uniqueHashes) {
+                input.readFully(hash);
+            }
+
+            try (RegionFile region = RegionFile.create(tempPath, width, height, depth, chunkCount, codec)) {
+                for (int i = 0; i < chunkCount; ++i) {
+                    int index = input.readInt();
+                    if (index >= 0) {
+                        region.writeChunk(i, this.getObject(uniqueHashes[index]));
+                    }
+                }
+                if (metadataHash != null) {
+                    region.writeMetadata(this.getObject(metadataHash));
+                }
+                region.flush();
+            }
+        }
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+
+    public int getObjectsWritten() {
+        return this.objectsWritten.get();
+    }
+}
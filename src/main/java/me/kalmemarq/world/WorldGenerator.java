@@ -0,0 +1,227 @@
+package me.kalmemarq.world;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import me.kalmemarq.block.Blocks;
+import me.kalmemarq.util.NoiseMap;
+
+import java.util.Random;
+
+public class WorldGenerator {
+    public final long seed;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int xChunks;
+    private final int zChunks;
+    private final int[] surfaceHeights;
+    private final int[] rockHeights;
+    private final float[] caveSpheres;
+    private final int[][] caveSpheresBySection;
+
+    public WorldGenerator(long seed, int width, int height, int depth) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.xChunks = (width + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+        this.zChunks = (height + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+        int yChunks = (depth + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+
+        Random random = new Random(seed);
+        NoiseMap noiseMap = new NoiseMap(random);
+        int[] heightmap1 = noiseMap.read(width, height, 0);
+        int[] heightmap2 = noiseMap.read(width, height, 0);
+        int[] controlFilter = noiseMap.read(width, height, 1);
+        int[] rockMap = noiseMap.read(width, height, 1);
+
+        this.surfaceHeights = new int[width * height];
+        this.rockHeights = new int[width * height];
+        for (int i = 0; i < this.surfaceHeights.length; ++i) {
+            int dh1 = heightmap1[i];
+            int dh2 = heightmap2[i];
+            int cfh = controlFilter[i];
+            if (cfh < 128) {
+                dh2 = dh1;
+            }
+
+            int dh = Math.max(dh2, dh1);
+
+            dh = dh / 8 + depth / 3;
+            int rh = rockMap[i] / 8 + depth / 3;
+            if (rh > dh - 2) {
+                rh = dh - 2;
+            }
+
+            this.surfaceHeights[i] = dh;
+            this.rockHeights[i] = rh;
+        }
+
+        FloatArrayList spheres = new FloatArrayList();
+        for (long i = 0, attempts = (long) width * height * depth / 256 / 64; i < attempts; ++i) {
+            this.generateRandomCave(random, spheres);
+        }
+        this.caveSpheres = spheres.toFloatArray();
+
+        IntArrayList[] buckets = new IntArrayList[this.xChunks * yChunks * this.zChunks];
+        for (int i = 0; i < this.caveSpheres.length; i += 4) {
+            float radius = this.caveSpheres[i + 3];
+            int minX = Math.max((int) (this.caveSpheres[i] - radius), 1) >> ChunkSection.SIZE_BITS;
+            int maxX = Math.min((int) (this.caveSpheres[i] + radius), width - 1) >> ChunkSection.SIZE_BITS;
+            int minY = Math.max((int) (this.caveSpheres[i + 1] - radius), 1) >> ChunkSection.SIZE_BITS;
+            int maxY = Math.min((int) (this.caveSpheres[i + 1] + radius), depth - 1) >> ChunkSection.SIZE_BITS;
+            int minZ = Math.max((int) (this.caveSpheres[i + 2] - radius), 1) >> ChunkSection.SIZE_BITS;
+            int maxZ = Math.min((int) (this.caveSpheres[i + 2] + radius), height - 1) >> ChunkSection.SIZE_BITS;
+
+            for (int chunkY = minY; chunkY <= maxY; ++chunkY) {
+                for (int chunkZ = minZ; chunkZ <= maxZ; ++chunkZ) {
+                    for (int chunkX = minX; chunkX <= maxX; ++chunkX) {
+                        int index = (chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX;
+                        if (buckets[index] == null) {
+                            buckets[index] = new IntArrayList();
+                        }
+                        buckets[index].add(i);
+                    }
+                }
+            }
+        }
+
+        this.caveSpheresBySection = new int[buckets.length][];
+        for (int i = 0; i < buckets.length; ++i) {
+            if (buckets[i] != null) {
+                this.caveSpheresBySection[i] = buckets[i].toIntArray();
+            }
+        }
+    }
+
+    private void generateRandomCave(Random random, FloatArrayList spheres) {
+        float cavePosX = random.nextFloat() * (float)this.width;
+        float cavePosY = random.nextFloat() * (float)this.depth;
+        float cavePosZ = random.nextFloat() * (float)this.height;
+
+        int caveLength = (int)(random.nextFloat() + random.nextFloat() * 150f);
+        float caveDirectionXY = (float)((double)random.nextFloat() * Math.PI * 2d);
+        float caveDirectionZ = (float)((double)random.nextFloat() * Math.PI * 2d);
+
+        float directionChangeXY = 0f;
+        float directionChangeZ = 0f;
+
+        for (int l = 0; l < caveLength; ++l) {
+            cavePosX = (float)((double)cavePosX + Math.sin((double)caveDirectionXY) * Math.cos((double)caveDirectionZ));
+            cavePosZ = (float)((double)cavePosZ + Math.cos((double)caveDirectionXY) * Math.cos((double)caveDirectionZ));
+            cavePosY = (float)((double)cavePosY + Math.sin((double)caveDirectionZ));
+
+            caveDirectionXY += directionChangeXY * 0.2f;
+            directionChangeXY = directionChangeXY * 0.9f + random.nextFloat() - random.nextFloat();
+            caveDirectionZ += directionChangeZ * 0.5f;
+            caveDirectionZ *= 0.5f;
+            directionChangeZ = directionChangeZ * 0.9f + random.nextFloat() - random.nextFloat();
+
+            float caveRadius = (float)(Math.sin((double)l * Math.PI / (double)caveLength) * 2.5d + 1d);
+
+            spheres.add(cavePosX);
+            spheres.add(cavePosY);
+            spheres.add(cavePosZ);
+            spheres.add(caveRadius);
+        }
+    }
+
+    public void fillHeightmap(short[] heightmap) {
+        for (int i = 0; i < heightmap.length; ++i) {
+            int y = Math.min(this.surfaceHeights[i], this.depth - 1);
+            while (y >= 0 && y <= this.rockHeights[i] && this.isCarved(i % this.width, y, i / this.width)) {
+                --y;
+            }
+            heightmap[i] = (short) Math.max(y, -1);
+        }
+    }
+
+    private boolean isCarved(int x, int y, int z) {
+        int[] spheres = this.caveSpheresBySection[((y >> ChunkSection.SIZE_BITS) * this.zChunks + (z >> ChunkSection.SIZE_BITS)) * this.xChunks + (x >> ChunkSection.SIZE_BITS)];
+        if (spheres == null || x < 1 || y < 1 || z < 1) return false;
+
+        for (int sphere : spheres) {
+            float radius = this.caveSpheres[sphere + 3];
+            float xd = (float)x - this.caveSpheres[sphere];
+            float yd = (float)y - this.caveSpheres[sphere + 1];
+            float zd = (float)z - this.caveSpheres[sphere + 2];
+            if (xd * xd + yd * yd * 2f + zd * zd < radius * radius &&
+                    x <= (int)(this.caveSpheres[sphere] + radius) && y <= (int)(this.caveSpheres[sphere + 1] + radius) && z <= (int)(this.caveSpheres[sphere + 2] + radius) &&
+                    x >= (int)(this.caveSpheres[sphere] - radius) && y >= (int)(this.caveSpheres[sphere + 1] - radius) && z >= (int)(this.caveSpheres[sphere + 2] - radius)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ChunkSection generateSection(int chunkX, int chunkY, int chunkZ) {
+        int baseX = chunkX << ChunkSection.SIZE_BITS;
+        int baseY = chunkY << ChunkSection.SIZE_BITS;
+        int baseZ = chunkZ << ChunkSection.SIZE_BITS;
+        int maxX = Math.min(baseX + ChunkSection.SIZE, this.width);
+        int maxY = Math.min(baseY + ChunkSection.SIZE, this.depth);
+        int maxZ = Math.min(baseZ + ChunkSection.SIZE, this.height);
+
+        ChunkSection section = new ChunkSection();
+
+        for (int z = baseZ; z < maxZ; ++z) {
+            for (int x = baseX; x < maxX; ++x) {
+                int dh = this.surfaceHeights[x + z * this.width];
+                int rh = this.rockHeights[x + z * this.width];
+
+                for (int y = baseY; y < maxY && y <= dh; ++y) {
+                    int id = 0;
+
+                    if (y == dh) {
+                        id = Blocks.GRASS.numericId;
+                    } else if (y < dh) {
+                        id = Blocks.DIRT.numericId;
+                    }
+
+                    if (y <= rh) {
+                        id = Blocks.STONE.numericId;
+                    }
+
+                    section.set(x - baseX, y - baseY, z - baseZ, id);
+                }
+            }
+        }
+
+        int[] spheres = this.caveSpheresBySection[(chunkY * this.zChunks + chunkZ) * this.xChunks + chunkX];
+        if (spheres != null) {
+            for (int sphere : spheres) {
+                this.carveSphere(section, baseX, baseY, baseZ, this.caveSpheres[sphere], this.caveSpheres[sphere + 1], this.caveSpheres[sphere + 2], this.caveSpheres[sphere + 3]);
+            }
+        }
+
+        section.trim();
+        return section;
+    }
+
+    private void carveSphere(ChunkSection section, int baseX, int baseY, int baseZ, float posX, float posY, float posZ, float carveRadius) {
+        int minX = Math.max(Math.max((int)(posX - carveRadius), 1), baseX);
+        int maxX = Math.min(Math.min((int)(posX + carveRadius), this.width - 1), baseX + ChunkSection.MASK);
+        int minY = Math.max(Math.max((int)(posY - carveRadius), 1), baseY);
+        int maxY = Math.min(Math.min((int)(posY + carveRadius), this.depth - 1), baseY + ChunkSection.MASK);
+        int minZ = Math.max(Math.max((int)(posZ - carveRadius), 1), baseZ);
+        int maxZ = Math.min(Math.min((int)(posZ + carveRadius), this.height - 1), baseZ + ChunkSection.MASK);
+
+        float carveRadiusSquared = carveRadius * carveRadius;
+
+        for (int x = minX; x <= maxX; ++x) {
+            for (int y = minY; y <= maxY; ++y) {
+                for (int z = minZ; z <= maxZ; ++z) {
+                    float xd = (float)x - posX;
+                    float yd = (float)y - posY;
+                    float zd = (float)z - posZ;
+
+                    float distanceSquared = xd * xd + yd * yd * 2f + zd * zd;
+
+                    if (distanceSquared < carveRadiusSquared && section.get(x - baseX, y - baseY, z - baseZ) == Blocks.STONE.numericId) {
+                        section.set(x - baseX, y - baseY, z - baseZ, 0);
+                    }
+                }
+            }
+        }
+    }
+}
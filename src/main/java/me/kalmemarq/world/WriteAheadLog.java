@@ -0,0 +1,117 @@
+package me.kalmemarq.world;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class WriteAheadLog implements Closeable {
+    public static final int MAX_HORIZONTAL = 1 << 22;
+    public static final int MAX_VERTICAL = 1 << 12;
+    public static final int BOX_RECORD = 0xFF;
+    private static final int RECORD_SIZE = 8;
+    private static final int BOX_LENGTH = 3;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+
+    private WriteAheadLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static WriteAheadLog open(Path path, int width, int height, int depth) throws IOException {
+        if (width > MAX_HORIZONTAL || height > MAX_HORIZONTAL || depth > MAX_VERTICAL) {
+            throw new IllegalArgumentException("Edit log records cannot address a world of " + width + "x" + height + "x" + depth);
+        }
+        return new WriteAheadLog(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    public static long pack(int x, int y, int z, int id) {
+        return ((long) x << 42) | ((long) z << 20) | ((long) y << 8) | (id & 0xFF);
+    }
+
+    public static int unpackX(long record) {
+        return (int) (record >>> 42);
+    }
+
+    public static int unpackY(long record) {
+        return (int) (record >>> 8) & (MAX_VERTICAL - 1);
+    }
+
+    public static int unpackZ(long record) {
+        return (int) (record >>> 20) & (MAX_HORIZONTAL - 1);
+    }
+
+    public static int unpackId(long record) {
+        return (int) record & 0xFF;
+    }
+
+    public static long[] packBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int matchId, int fillId) {
+        return new long[] {pack(minX, minY, minZ, BOX_RECORD), pack(maxX - 1, maxY - 1, maxZ - 1, fillId), pack(0, 0, 0, matchId)};
+    }
+
+    public void replay(Replayer replayer) throws IOException {
+        long size = this.channel.size() / RECORD_SIZE * RECORD_SIZE;
+        long position = 0;
+        long[] box = new long[BOX_LENGTH];
+        int boxed = 0;
+
+        while (position < size) {
+            this.buffer.clear();
+            this.buffer.limit((int) Math.min(this.buffer.capacity(), size - position));
+            while (this.buffer.hasRemaining()) {
+                position += this.channel.read(this.buffer, position);
+            }
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                long record = this.buffer.getLong();
+                if (boxed == 0 && unpackId(record) != BOX_RECORD) {
+                    replayer.block(record);
+                    continue;
+                }
+                box[boxed++] = record;
+                if (boxed == BOX_LENGTH) {
+                    int matchId = unpackId(box[2]);
+                    replayer.box(unpackX(box[0]), unpackY(box[0]), unpackZ(box[0]), unpackX(box[1]) + 1, unpackY(box[1]) + 1, unpackZ(box[1]) + 1, matchId == BOX_RECORD ? -1 : matchId, unpackId(box[1]));
+                    boxed = 0;
+                }
+            }
+        }
+
+        size -= (long) boxed * RECORD_SIZE;
+        this.channel.truncate(size);
+        this.channel.position(size);
+    }
+
+    public void append(long[] records) throws IOException {
+        for (int i = 0; i < records.length; ) {
+            this.buffer.clear();
+            while (i < records.length && this.buffer.hasRemaining()) {
+                this.buffer.putLong(records[i++]);
+            }
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        }
+        this.channel.force(false);
+    }
+
+    public void truncate() throws IOException {
+        this.channel.truncate(0);
+        this.channel.position(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    public interface Replayer {
+        void block(long record);
+
+        void box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int matchId, int fillId);
+    }
+}